@@ -0,0 +1,53 @@
+package com.pms.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+@Configuration
+public class ExportJobConfig {
+
+    // Renders export jobs off the request threads; the queue bounds how much work can pile up
+    @Bean(name = "exportJobExecutor")
+    public ThreadPoolTaskExecutor exportJobExecutor(
+            @Value("${parcel.export.jobs.threads:2}") int threads,
+            @Value("${parcel.export.jobs.queue-capacity:20}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("export-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        monitor(executor, "exportJobExecutor", meterRegistry);
+        return executor;
+    }
+
+    // Renders the id-range slices of parallel CSV exports; each busy thread holds one DB connection
+    @Bean(name = "parallelExportExecutor")
+    public ThreadPoolTaskExecutor parallelExportExecutor(
+            @Value("${parcel.export.parallel.threads:4}") int threads,
+            @Value("${parcel.export.parallel.queue-capacity:256}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("export-slice-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        monitor(executor, "parallelExportExecutor", meterRegistry);
+        return executor;
+    }
+
+    // executor.queued / executor.active / executor.completed meters tagged name=<bean name>
+    private static void monitor(ThreadPoolTaskExecutor executor, String name, MeterRegistry meterRegistry) {
+        new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), name, Tags.empty()).bindTo(meterRegistry);
+    }
+}
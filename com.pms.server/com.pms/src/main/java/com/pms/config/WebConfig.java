@@ -37,7 +37,7 @@ public class WebConfig implements WebMvcConfigurer {
             .allowedOrigins("http://localhost:5173","http://localhost:5174")
             .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
             .allowedHeaders("*")
-            .exposedHeaders("Content-Disposition") // for file download headers
+            .exposedHeaders("Content-Disposition", "X-Export-Watermark") // for file download headers
             .allowCredentials(true);
     }
 }
@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.time.Instant;
 
 @RestController
 @Slf4j
@@ -23,27 +24,76 @@ public class ExportController {
     }
 
     @GetMapping("/excel")
-    public void exportToExcel(HttpServletResponse response) throws IOException {
+    public void exportToExcel(HttpServletResponse response,
+                              @RequestParam(required = false) Instant since) throws IOException {
     	 log.info("Received request to export parcel for recipient: {}", response.getHeaders(null));
-        exportService.exportParcelsToExcel(response, null);
+        exportService.exportParcelsToExcel(response, withSince(null, since));
     }
 
     @GetMapping("/pdf")
-    public void exportToPDF(HttpServletResponse response) throws IOException {
+    public void exportToPDF(HttpServletResponse response,
+                            @RequestParam(required = false) Instant since) throws IOException {
     	 log.info("Received request to create parcel for recipient: {}", response.getContentType());
-        exportService.exportParcelsToPDF(response, null);
+        exportService.exportParcelsToPDF(response, withSince(null, since));
     }
 
     @PostMapping("/excel/filtered")
     public void exportFilteredToExcel(HttpServletResponse response, 
-                                     @RequestBody ExportFilterDTO filterDTO) throws IOException {
-        exportService.exportParcelsToExcel(response, filterDTO);
+                                     @RequestBody ExportFilterDTO filterDTO,
+                                     @RequestParam(required = false) Instant since) throws IOException {
+        exportService.exportParcelsToExcel(response, withSince(filterDTO, since));
     }
 
     @PostMapping("/pdf/filtered")
     public void exportFilteredToPDF(HttpServletResponse response, 
-                                   @RequestBody ExportFilterDTO filterDTO) throws IOException {
+                                   @RequestBody ExportFilterDTO filterDTO,
+                                   @RequestParam(required = false) Instant since) throws IOException {
     	 log.info("Received request export  parcel for recipient: {}", filterDTO.getDestinationCity());
-        exportService.exportParcelsToPDF(response, filterDTO);
+        exportService.exportParcelsToPDF(response, withSince(filterDTO, since));
     }
-}
\ No newline at end of file
+
+    // parallel=true renders id-range slices concurrently; the output matches the sequential export unless
+    // parcels change while it runs (slices read separate snapshots)
+    @GetMapping("/csv")
+    public void exportToCsv(HttpServletResponse response,
+                            @RequestParam(defaultValue = "false") boolean parallel,
+                            @RequestParam(required = false) Instant since) throws IOException {
+        exportService.exportParcelsToCsv(response, withSince(null, since), parallel);
+    }
+
+    @PostMapping("/csv/filtered")
+    public void exportFilteredToCsv(HttpServletResponse response,
+                                   @RequestBody ExportFilterDTO filterDTO,
+                                   @RequestParam(defaultValue = "false") boolean parallel,
+                                   @RequestParam(required = false) Instant since) throws IOException {
+        exportService.exportParcelsToCsv(response, withSince(filterDTO, since), parallel);
+    }
+
+    @GetMapping("/csv.gz")
+    public void exportToCsvGzip(HttpServletResponse response,
+                                @RequestParam(defaultValue = "false") boolean parallel,
+                                @RequestParam(required = false) Instant since) throws IOException {
+        exportService.exportParcelsToCsvGzip(response, withSince(null, since), parallel);
+    }
+
+    @PostMapping("/csv.gz/filtered")
+    public void exportFilteredToCsvGzip(HttpServletResponse response,
+                                       @RequestBody ExportFilterDTO filterDTO,
+                                       @RequestParam(defaultValue = "false") boolean parallel,
+                                       @RequestParam(required = false) Instant since) throws IOException {
+        exportService.exportParcelsToCsvGzip(response, withSince(filterDTO, since), parallel);
+    }
+
+    // Delta export: ?since= (or since in the body) limits the export to rows changed after it plus
+    // deleted parcels; the X-Export-Watermark response header is the since for the next run
+    private static ExportFilterDTO withSince(ExportFilterDTO filterDTO, Instant since) {
+        if (since == null) {
+            return filterDTO;
+        }
+        ExportFilterDTO filter = filterDTO != null ? filterDTO : new ExportFilterDTO();
+        if (filter.getSince() == null) {
+            filter.setSince(since);
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,69 @@
+package com.pms.controller;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pms.dto.ExportJobRequestDto;
+import com.pms.dto.ExportJobStatusDto;
+import com.pms.service.ExportJobService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@Slf4j
+@RequiredArgsConstructor
+@RequestMapping("/api/parcels/export/jobs")
+public class ExportJobController {
+
+    private final ExportJobService exportJobService;
+
+    // Submit an export job; identical requests within the TTL get the existing job back
+    @PostMapping
+    public ResponseEntity<ExportJobStatusDto> submit(@RequestBody ExportJobRequestDto request) {
+        ExportJobStatusDto status = exportJobService.submit(request);
+        log.info("Export job {} submitted ({}), state {}", status.getJobId(), status.getFormat(), status.getState());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/parcels/export/jobs/" + status.getJobId()))
+                .body(status);
+    }
+
+    // Poll status and progress
+    @GetMapping("/{jobId}")
+    public ResponseEntity<ExportJobStatusDto> getStatus(@PathVariable String jobId) {
+        return ResponseEntity.ok(exportJobService.getStatus(jobId));
+    }
+
+    // Download the finished file; Range requests are answered with 206 partial content by Spring MVC
+    @GetMapping("/{jobId}/download")
+    public ResponseEntity<?> download(@PathVariable String jobId) {
+        ExportJobStatusDto status = exportJobService.getStatus(jobId);
+        if (!"COMPLETED".equals(status.getState())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(status);
+        }
+        Path file = exportJobService.getArtifact(jobId);
+        Resource resource = new FileSystemResource(file);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportJobService.getContentType(jobId)))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(status.getFileName()).build().toString())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag("\"" + jobId + "\"")
+                .lastModified(status.getCompletedAt())
+                .body(resource);
+    }
+}
@@ -1,21 +1,38 @@
 package com.pms.controller;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import com.pms.dto.BulkIngestResultDto;
+import com.pms.dto.BulkStatusUpdateDto;
+import com.pms.dto.BulkStatusUpdateResultDto;
+import com.pms.dto.ParcelCursorPageDto;
 import com.pms.dto.ParcelDto;
-import com.pms.service.FileStorageService;
+import com.pms.exception.ResourceNotFoundException;
+import com.pms.service.ImageDeliveryService;
+import com.pms.service.ImageVariantService;
+import com.pms.service.ImageVariantService.Variant;
+import com.pms.service.ParcelBulkService;
 import com.pms.service.ParcelService;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 
 @RestController
@@ -27,7 +44,16 @@ public class ParcelController {
     private ParcelService parcelService;
     
     @Autowired
-    private FileStorageService fileStorageService;
+    private ImageDeliveryService imageDeliveryService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private ParcelBulkService parcelBulkService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     /**
      * Create new parcel with optional image attachment
@@ -54,6 +80,48 @@ public class ParcelController {
         }
     }
 
+    /**
+     * Bulk create parcels from a JSON array
+     * @param body JSON array of parcels, read as a stream
+     * @return Counts and per-row failures
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkIngestResultDto> bulkCreateFromJson(InputStream body) throws IOException {
+        log.info("[Parcel] Bulk ingest (JSON) started");
+        BulkIngestResultDto result = parcelBulkService.ingestJson(body);
+        log.info("[Parcel] Bulk ingest (JSON) inserted {} of {} parcels", result.getInserted(), result.getReceived());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Bulk create parcels from CSV
+     * @param body CSV with a header row of parcel field names, read as a stream
+     * @return Counts and per-row failures
+     */
+    @PostMapping(value = "/bulk", consumes = "text/csv")
+    public ResponseEntity<BulkIngestResultDto> bulkCreateFromCsv(InputStream body) throws IOException {
+        log.info("[Parcel] Bulk ingest (CSV) started");
+        BulkIngestResultDto result = parcelBulkService.ingestCsv(body);
+        log.info("[Parcel] Bulk ingest (CSV) inserted {} of {} parcels", result.getInserted(), result.getReceived());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Move many parcels to a new status at once
+     * @param request Parcel ids and/or tracking numbers plus the target status
+     * @return Parcels that transitioned and those rejected, with reasons
+     */
+    @PutMapping("/status/bulk")
+    public ResponseEntity<BulkStatusUpdateResultDto> bulkUpdateStatus(@RequestBody BulkStatusUpdateDto request) {
+        log.info("[Parcel] Bulk status update to {}", request.getStatus());
+        log.debug("[Parcel] Bulk status payload: {}", request);
+
+        BulkStatusUpdateResultDto result = parcelBulkService.transitionStatus(request);
+        log.info("[Parcel] Bulk status update: {} transitioned, {} rejected",
+                result.getTransitioned().size(), result.getRejected().size());
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Get all parcels (unpaginated)
      * @return List of all parcels
@@ -72,6 +140,39 @@ public class ParcelController {
         }
     }
 
+    /**
+     * Stream all parcels as newline-delimited JSON.
+     * Rows are read through a database cursor and written as they arrive, so heap use
+     * does not grow with the size of the table.
+     * @return One JSON parcel per line
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllParcels() {
+        log.info("[Parcel] Streaming all parcels");
+
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writer()
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                    .withRootValueSeparator("\n")
+                    .writeValues(out)) {
+                long count = parcelService.streamAllParcels(dto -> {
+                    try {
+                        writer.write(dto);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                log.debug("[Parcel] Streamed {} parcels", count);
+            } catch (UncheckedIOException e) {
+                log.error("[Parcel] Streaming aborted: {}", e.getMessage());
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     /**
      * Update parcel details
      * @param id Parcel ID
@@ -135,23 +236,30 @@ public class ParcelController {
     }
 
     /**
-     * Get parcel image
+     * Get parcel image. Supports conditional (If-None-Match) and single range requests.
      * @param fileName Image filename
-     * @return Image resource
+     * @param variant Optional downscaled variant (thumb, medium); the original is served until it is ready
      */
     @GetMapping("/image/{fileName:.+}")
-    public ResponseEntity<Resource> getParcelImage(@PathVariable String fileName) {
-        log.info("[Parcel] Fetching image: {}", fileName);
-        
+    public void getParcelImage(@PathVariable String fileName,
+                               @RequestParam(required = false) String variant,
+                               HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        log.debug("[Parcel] Fetching image: {} (variant {})", fileName, variant);
+
         try {
-            Resource resource = fileStorageService.loadFileAsResource(fileName);
-            log.debug("[Parcel] Found image file: {}", fileName);
-            return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_JPEG)
-                    .body(resource);
+            Variant requested = Variant.fromParam(variant);
+            String variantName = requested == null ? null : imageVariantService.resolve(fileName, requested);
+            if (variantName != null) {
+                imageDeliveryService.serve(variantName, request, response);
+            } else {
+                imageDeliveryService.serve(fileName, requested != null, request, response);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ResourceNotFoundException("Unknown image variant: " + variant);
         } catch (FileNotFoundException e) {
             log.error("[Parcel] Image not found: {}", fileName);
-            throw new RuntimeException("Image not found", e);
+            throw new ResourceNotFoundException("Image not found");
         }
     }
 
@@ -163,6 +271,12 @@ public class ParcelController {
     @GetMapping("/tracking")
     public ResponseEntity<ParcelDto> trackParcel(@RequestParam String number) {
         log.info("[Parcel] Tracking parcel with number: {}", number);
+
+        // Definite misses are answered from memory: no query and no exception
+        if (!parcelService.trackingNumberMightExist(number)) {
+            log.debug("[Parcel] Unknown tracking number: {}", number);
+            return ResponseEntity.notFound().build();
+        }
         
         try {
             ParcelDto parcel = parcelService.getParcelByTrackingNumber(number);
@@ -204,6 +318,27 @@ public class ParcelController {
         }
     }
 
+    /**
+     * Get parcels newest first using keyset (seek) pagination.
+     * Deep pages cost the same as the first one and no total count is computed.
+     * @param cursor Continuation token from the previous page (omit for the first page)
+     * @param size Page size
+     * @return Page content with the next cursor
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<ParcelCursorPageDto> getParcelsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "5") int size) {
+
+        log.info("[Parcel] Fetching parcels by cursor (size:{})", size);
+        log.debug("[Parcel] Cursor: {}", cursor);
+
+        // A bad cursor or size propagates as InvalidPageRequestException (400)
+        ParcelCursorPageDto parcels = parcelService.getParcelsByCursor(cursor, size);
+        log.debug("[Parcel] Found {} parcels, hasNext: {}", parcels.getSize(), parcels.isHasNext());
+        return ResponseEntity.ok(parcels);
+    }
+
     /**
      * Filter parcels by status with pagination
      * @param status Parcel status to filter by
@@ -2,14 +2,17 @@ package com.pms.controller;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.pms.dto.DeliveryLatencyDTO;
 import com.pms.dto.DeliveryPerformanceReportDTO;
 import com.pms.dto.ReportSummaryDTO;
 import com.pms.dto.StatusReportDTO;
@@ -60,4 +63,19 @@ public class ReportController {
         return ResponseEntity.ok(dto);
     }
 
+    // Delivery latency percentiles per destination city and parcel type (served from memory)
+    @GetMapping("/delivery-latency")
+    public ResponseEntity<List<DeliveryLatencyDTO>> getDeliveryLatency(
+            @RequestParam(required = false) String city,
+            @RequestParam(required = false) String parcelType) {
+        return ResponseEntity.ok(reportService.getDeliveryLatency(city, parcelType));
+    }
+
+    // Rebuild the daily rollup behind the summary report (also runs nightly)
+    @PostMapping("/rollup/rebuild")
+    public ResponseEntity<Map<String, Integer>> rebuildDailyStats() {
+        int buckets = reportService.rebuildDailyStats();
+        return ResponseEntity.ok(Map.of("buckets", buckets));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.pms.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class BulkIngestResultDto {
+    private int received;
+    private int inserted;
+    private int failed;
+    private List<BulkRowErrorDto> errors = new ArrayList<>();
+
+    public void addError(int row, String trackingNumber, String message) {
+        errors.add(new BulkRowErrorDto(row, trackingNumber, message));
+        failed++;
+    }
+}
@@ -0,0 +1,14 @@
+package com.pms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRowErrorDto {
+    private int row;              // 1-based position in the submitted payload
+    private String trackingNumber;
+    private String message;
+}
@@ -0,0 +1,13 @@
+package com.pms.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class BulkStatusUpdateDto {
+    // Parcels may be addressed by id, by tracking number, or both
+    private List<Long> ids;
+    private List<String> trackingNumbers;
+    private String status; // target Parcel.ParcelStatus name
+}
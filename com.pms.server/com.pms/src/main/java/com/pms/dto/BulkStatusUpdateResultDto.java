@@ -0,0 +1,13 @@
+package com.pms.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class BulkStatusUpdateResultDto {
+    private String status;
+    private List<Long> transitioned = new ArrayList<>();
+    private List<StatusTransitionRejectionDto> rejected = new ArrayList<>();
+}
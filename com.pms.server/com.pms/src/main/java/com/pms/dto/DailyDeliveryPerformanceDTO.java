@@ -0,0 +1,16 @@
+package com.pms.dto;
+
+import java.time.LocalDate;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class DailyDeliveryPerformanceDTO {
+    private LocalDate date;
+    private long totalDelivered;
+    private long onTimeDeliveries;
+    private long lateDeliveries;
+    private double onTimePercentage;
+}
@@ -0,0 +1,18 @@
+package com.pms.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+// Delivery latency (deliveredAt - receivedAt) percentiles for one city / parcel type, in seconds
+@Data
+@Builder
+public class DeliveryLatencyDTO {
+    private String destinationCity;
+    private String parcelType;
+    private long count;
+    private long p50Seconds;
+    private long p90Seconds;
+    private long p99Seconds;
+    private long maxSeconds;
+    private double meanSeconds;
+}
@@ -1,5 +1,7 @@
 package com.pms.dto;
 
+import java.util.List;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -19,4 +21,5 @@ public class DeliveryPerformanceReportDTO {
     private long lateDeliveries;
     private double latePercentage;
     private double performancePercentage;
+    private List<DailyDeliveryPerformanceDTO> daily; // one entry per UTC day with deliveries
 }
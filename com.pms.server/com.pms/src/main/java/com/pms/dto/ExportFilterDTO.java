@@ -14,4 +14,9 @@ public class ExportFilterDTO {
     private String destinationCity;
     private String parcelType;
     private String weightCategory;
+
+    // Delta export: only rows changed (and parcels deleted) in (since, until]. When since is set and
+    // until is not, the server fills until with the watermark it hands back for the next run.
+    private Instant since;
+    private Instant until;
 }
\ No newline at end of file
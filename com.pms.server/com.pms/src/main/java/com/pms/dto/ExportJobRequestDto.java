@@ -0,0 +1,10 @@
+package com.pms.dto;
+
+import lombok.Data;
+
+@Data
+public class ExportJobRequestDto {
+    private String format;          // xlsx, pdf, csv or csv.gz
+    private ExportFilterDTO filter; // optional; null exports every parcel
+    private boolean parallel;       // csv / csv.gz only: render id-range slices concurrently
+}
@@ -0,0 +1,26 @@
+package com.pms.dto;
+
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ExportJobStatusDto {
+    private String jobId;
+    private String format;
+    private String state;           // QUEUED, RUNNING, COMPLETED, FAILED
+    private long totalRows;
+    private long rowsWritten;
+    private double progressPercent;
+    private long sizeBytes;
+    private String fileName;
+    private String downloadUrl;     // set once COMPLETED
+    private String error;
+    private boolean cached;         // true when an identical earlier job was reused
+    private Instant createdAt;
+    private Instant completedAt;
+    private Instant expiresAt;
+    private Instant watermark;      // pass as since to the next delta export
+}
@@ -0,0 +1,18 @@
+package com.pms.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ParcelCursorPageDto {
+    private List<ParcelDto> content;
+    private int size;
+    // Opaque continuation token; null when there are no further rows
+    private String nextCursor;
+    private boolean hasNext;
+}
@@ -0,0 +1,15 @@
+package com.pms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatusTransitionRejectionDto {
+    private Long id;
+    private String trackingNumber;
+    private String currentStatus;
+    private String reason;
+}
@@ -2,6 +2,8 @@ package com.pms.entity;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Set;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -10,12 +12,25 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Data;
 
 @Entity
 @Data
-@Table(name = "parcels")
+@Table(name = "parcels", indexes = {
+    // Backs the keyset (seek) pagination on (receivedAt, id)
+    @Index(name = "idx_parcels_received_at_id", columnList = "received_at, id"),
+    // Range scan for the delivery-performance report; estimated_delivery_at makes it covering
+    @Index(name = "idx_parcels_delivered_at", columnList = "delivered_at, destination_city, parcel_type, estimated_delivery_at"),
+    // Range scan for delta exports (rows changed since a watermark)
+    @Index(name = "idx_parcels_last_modified_at", columnList = "last_modified_at, id"),
+    // Point lookups by the orphaned-upload collector before it deletes a file
+    @Index(name = "idx_parcels_image_path", columnList = "image_path")
+})
 public class Parcel {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -50,6 +65,23 @@ public class Parcel {
     private String parcelType;    // DOCUMENT, PACKAGE, FREIGHT
     private String weightCategory; // SMALL, MEDIUM, LARGE
     
+    /* --------------------------------Change tracking Start ----------------------------------------------*/
+    // Bumped by Hibernate on every entity update and by hand in the bulk UPDATE / INSERT statements
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint not null default 0")
+    private long version;
+
+    // Drives delta exports; the bulk JDBC/JPQL writes set it explicitly
+    @Column(name = "last_modified_at")
+    private Instant lastModifiedAt;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        lastModifiedAt = Instant.now();
+    }
+    /* --------------------------------Change tracking End ----------------------------------------------*/
+
     /* --------------------------------File field handling Start ----------------------------------------------*/
     private String imagePath;
     /* --------------------------------File field handling End ----------------------------------------------*/
@@ -58,7 +90,24 @@ public class Parcel {
     @Enumerated(EnumType.STRING)
     private ParcelStatus status;
     public enum ParcelStatus {
-        RECEIVED, IN_TRANSIT, DELIVERED, RETURNED, FAILED_DELIVERY,IN_STORAGE
+        RECEIVED, IN_TRANSIT, DELIVERED, RETURNED, FAILED_DELIVERY,IN_STORAGE;
+
+        // Statuses a parcel may legally move from into this one
+        public Set<ParcelStatus> allowedSources() {
+            switch (this) {
+                case IN_STORAGE:
+                    return EnumSet.of(RECEIVED, RETURNED);
+                case IN_TRANSIT:
+                    return EnumSet.of(RECEIVED, IN_STORAGE, FAILED_DELIVERY);
+                case DELIVERED:
+                case FAILED_DELIVERY:
+                    return EnumSet.of(IN_TRANSIT);
+                case RETURNED:
+                    return EnumSet.of(IN_TRANSIT, FAILED_DELIVERY, IN_STORAGE);
+                default:
+                    return EnumSet.noneOf(ParcelStatus.class);
+            }
+        }
     }
     /* --------------------------------Enum field handling End ----------------------------------------------*/
     
@@ -0,0 +1,51 @@
+package com.pms.entity;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Data;
+
+/**
+ * Pre-aggregated parcel counts per received day and reporting dimensions.
+ * Maintained incrementally by ParcelDailyStatsService; null dimensions are stored as ''
+ * so they take part in the unique key.
+ */
+@Entity
+@Data
+@Table(name = "parcel_daily_stats", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_parcel_daily_stats_key",
+        columnNames = {"stat_date", "status", "payment_method", "parcel_type", "destination_city"})
+})
+public class ParcelDailyStat {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    // Lengths keep the composite unique key inside InnoDB's index size limit
+    @Column(nullable = false, length = 32)
+    private String status;
+    @Column(name = "payment_method", nullable = false, length = 64)
+    private String paymentMethod;
+    @Column(name = "parcel_type", nullable = false, length = 64)
+    private String parcelType;
+    @Column(name = "destination_city", nullable = false, length = 128)
+    private String destinationCity;
+
+    private long parcelCount;
+    @Column(precision = 19, scale = 2)
+    private BigDecimal totalValue;
+    @Column(precision = 19, scale = 2)
+    private BigDecimal shippingCost;
+    // Parcels with a non-null shipping cost, so the average matches AVG(shipping_cost)
+    private long shippingCostCount;
+}
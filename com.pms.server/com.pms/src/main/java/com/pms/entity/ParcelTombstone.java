@@ -0,0 +1,42 @@
+package com.pms.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Marker left behind when a parcel is deleted, so delta exports can tell downstream copies to drop it.
+ * Parcel ids are never reused, so the parcel id is the key. Purged after the configured retention.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "parcel_tombstones", indexes = {
+    @Index(name = "idx_parcel_tombstones_deleted_at", columnList = "deleted_at, parcel_id")
+})
+public class ParcelTombstone {
+    @Id
+    @Column(name = "parcel_id")
+    private Long parcelId;
+
+    private String trackingNumber;
+
+    // The deleted row's version + 1, so it orders after every export of the live row
+    private long version;
+
+    @Column(name = "deleted_at", nullable = false)
+    private Instant deletedAt;
+
+    public ParcelTombstone(Parcel parcel, Instant deletedAt) {
+        this.parcelId = parcel.getId();
+        this.trackingNumber = parcel.getTrackingNumber();
+        this.version = parcel.getVersion() + 1;
+        this.deletedAt = deletedAt;
+    }
+}
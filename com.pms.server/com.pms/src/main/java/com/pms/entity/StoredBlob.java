@@ -0,0 +1,36 @@
+package com.pms.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * One stored upload, keyed by the SHA-256 of its bytes. refCount is the number of parcels
+ * pointing at it; identical uploads share the row and the file.
+ */
+@Entity
+@Data
+@Table(name = "stored_blobs")
+public class StoredBlob {
+    // Lowercase hex SHA-256, also the file name
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    // As declared by the first upload of these bytes
+    @Column(name = "content_type", length = 128)
+    private String contentType;
+
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,26 @@
+package com.pms.exception;
+
+import java.time.Instant;
+
+import lombok.Getter;
+
+/**
+ * A delta export asked for changes since a point older than the kept delete history
+ * (410 Gone): deletes before it can no longer be reported, so the client has to start over
+ * with a full export.
+ */
+@Getter
+public class DeltaHistoryExpiredException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Instant since;
+	private final long retentionDays;
+
+	public DeltaHistoryExpiredException(Instant since, long retentionDays) {
+		super("since " + since + " is older than the " + retentionDays
+				+ " day delete history, run a full export instead");
+		this.since = since;
+		this.retentionDays = retentionDays;
+	}
+}
@@ -0,0 +1,24 @@
+package com.pms.exception;
+
+import org.springframework.http.HttpStatus;
+
+import lombok.Getter;
+
+/**
+ * An export was not admitted: 429 when the caller already has too many exports waiting,
+ * 503 when the export capacity as a whole is saturated. Both carry a Retry-After hint.
+ */
+@Getter
+public class ExportThrottledException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final HttpStatus status;
+	private final long retryAfterSeconds;
+
+	public ExportThrottledException(String message, HttpStatus status, long retryAfterSeconds) {
+		super(message);
+		this.status = status;
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+}
@@ -53,6 +53,56 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    /**
+     * Handle ExportThrottledException: export capacity saturated (503) or per-user limit hit (429)
+     */
+    @ExceptionHandler(ExportThrottledException.class)
+    public ResponseEntity<?> handleExportThrottled(ExportThrottledException ex) {
+        log.warn("Export throttled: {}", ex.getMessage());
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        ErrorResponse error = new ErrorResponse(
+                "EXPORT_THROTTLED",
+                ex.getMessage(),
+                ex.getStatus().value()
+        );
+        return new ResponseEntity<>(error, headers, ex.getStatus());
+    }
+
+    /**
+     * Handle DeltaHistoryExpiredException: the delta watermark predates the delete history (410)
+     */
+    @ExceptionHandler(DeltaHistoryExpiredException.class)
+    public ResponseEntity<?> handleDeltaHistoryExpired(DeltaHistoryExpiredException ex, WebRequest request) {
+        log.warn("Delta export refused: {}", ex.getMessage());
+        HttpServletRequest httpRequest = ((ServletWebRequest) request).getRequest();
+        if (isExportRequest(httpRequest.getHeader("Accept"), httpRequest.getContentType())) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.TEXT_PLAIN);
+            return new ResponseEntity<>(ex.getMessage(), headers, HttpStatus.GONE);
+        }
+        ErrorResponse error = new ErrorResponse(
+                "DELTA_HISTORY_EXPIRED",
+                ex.getMessage(),
+                HttpStatus.GONE.value()
+        );
+        return new ResponseEntity<>(error, HttpStatus.GONE);
+    }
+
+    /**
+     * Handle InvalidPageRequestException: a malformed cursor or page size from the client (400)
+     */
+    @ExceptionHandler(InvalidPageRequestException.class)
+    public ResponseEntity<?> handleInvalidPageRequest(InvalidPageRequestException ex) {
+        log.warn("Invalid page request: {}", ex.getMessage());
+        ErrorResponse error = new ErrorResponse(
+                "INVALID_PAGE_REQUEST",
+                ex.getMessage(),
+                HttpStatus.BAD_REQUEST.value()
+        );
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
     /**
      * Handle all unexpected exceptions
      */
@@ -82,11 +132,12 @@ public class GlobalExceptionHandler {
     }
 
     /**
-     * Utility: Check if request was for PDF or Excel export
+     * Utility: Check if request was for PDF, Excel or CSV export
      */
     private boolean isExportRequest(String acceptHeader, String contentType) {
         return (acceptHeader != null && (acceptHeader.contains("application/pdf") ||
-                                         acceptHeader.contains("application/vnd.ms-excel"))) ||
+                                         acceptHeader.contains("application/vnd.ms-excel") ||
+                                         acceptHeader.contains("text/csv"))) ||
                (contentType != null && (contentType.contains("application/pdf") ||
                                         contentType.contains("application/vnd.ms-excel")));
     }
@@ -0,0 +1,18 @@
+package com.pms.exception;
+
+/**
+ * A page request the client got wrong (400 Bad Request): a malformed or tampered cursor, or a
+ * page size out of range.
+ */
+public class InvalidPageRequestException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidPageRequestException(String message) {
+		super(message);
+	}
+
+	public InvalidPageRequestException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,361 @@
+package com.pms.parcelServiceImple;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pms.dto.ExportFilterDTO;
+import com.pms.dto.ExportJobRequestDto;
+import com.pms.dto.ExportJobStatusDto;
+import com.pms.entity.Parcel;
+import com.pms.entity.ParcelTombstone;
+import com.pms.exception.ExportThrottledException;
+import com.pms.exception.GlobalExceptionHandler.ExportException;
+import com.pms.exception.ResourceNotFoundException;
+import com.pms.service.ExportBulkhead;
+import com.pms.service.ExportJobService;
+import com.pms.service.ParallelCsvExportRenderer;
+import com.pms.service.ParcelExportRowSource;
+import com.pms.util.CsvExporter;
+import com.pms.util.ExcelExporter;
+import com.pms.util.GzipExportFormat;
+import com.pms.util.PDFExporter;
+import com.pms.util.ParcelExportFormat;
+import com.pms.util.ParcelRowWriter;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Renders exports on a bounded background pool into files under {@code parcel.export.jobs.dir}.
+ *
+ * A request is keyed by format plus the JSON form of its filter. While a job for that key is
+ * queued, running, or finished and younger than the TTL, identical submissions get the same job
+ * back instead of a new render. Artifacts are written to a ".part" file and moved into place only
+ * when complete, and are deleted once the TTL passes. Jobs live in memory, so a restart forgets
+ * them and clears the directory.
+ */
+@Service
+@Slf4j
+public class ExportJobServiceImpl implements ExportJobService {
+
+    private static final String DOWNLOAD_PATH = "/api/parcels/export/jobs/%s/download";
+
+    private final ParcelExportRowSource rowSource;
+    private final ParallelCsvExportRenderer parallelCsvRenderer;
+    private final ExportBulkhead bulkhead;
+    private final ThreadPoolTaskExecutor executor;
+    private final ObjectMapper objectMapper;
+    private final Map<String, ParcelExportFormat> formats;
+    private final Path directory;
+    private final Duration ttl;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, ExportJob> jobsByKey = new ConcurrentHashMap<>();
+
+    public ExportJobServiceImpl(ParcelExportRowSource rowSource,
+                                ParallelCsvExportRenderer parallelCsvRenderer,
+                                ExportBulkhead bulkhead,
+                                @Qualifier("exportJobExecutor") ThreadPoolTaskExecutor executor,
+                                ObjectMapper objectMapper,
+                                ExcelExporter excelExporter,
+                                PDFExporter pdfExporter,
+                                CsvExporter csvExporter,
+                                @Value("${parcel.export.jobs.dir:${java.io.tmpdir}/pms-exports}") String directory,
+                                @Value("${parcel.export.jobs.ttl-seconds:900}") long ttlSeconds) {
+        this.rowSource = rowSource;
+        this.parallelCsvRenderer = parallelCsvRenderer;
+        this.bulkhead = bulkhead;
+        this.executor = executor;
+        this.objectMapper = objectMapper;
+        this.formats = Map.of(
+                excelExporter.getFileExtension(), excelExporter,
+                pdfExporter.getFileExtension(), pdfExporter,
+                csvExporter.getFileExtension(), csvExporter,
+                "csv.gz", new GzipExportFormat(csvExporter));
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(directory);
+        // Jobs are not persisted, so anything left from a previous run is unreachable
+        try (Stream<Path> leftovers = Files.list(directory)) {
+            leftovers.forEach(this::deleteQuietly);
+        }
+    }
+
+    @Override
+    public ExportJobStatusDto submit(ExportJobRequestDto request) {
+        String formatName = request.getFormat() == null ? "" : request.getFormat().trim().toLowerCase();
+        ParcelExportFormat format = formats.get(formatName);
+        if (format == null) {
+            throw new ExportException("Unsupported export format '" + request.getFormat() + "', expected one of "
+                    + formats.keySet());
+        }
+        String owner = currentUser();
+        String key = cacheKey(formatName, request.getFilter());
+
+        // Parallel rendering produces the same file, so it is not part of the cache key
+        boolean parallel = request.isParallel() && formatName.startsWith("csv");
+        ExportJob candidate = new ExportJob(UUID.randomUUID().toString(), key, owner, formatName, format,
+                request.getFilter(), parallel);
+        // Fixed at submission; a reused job hands back the watermark its file was rendered against
+        candidate.watermark = rowSource.resolveWatermark(candidate.filter);
+        ExportJob job = jobsByKey.compute(key, (k, existing) ->
+                existing != null && existing.isReusable(Instant.now()) ? existing : candidate);
+        job.owners.add(owner);
+
+        if (job != candidate) {
+            log.info("Export job {} reused for {} ({})", job.id, owner, formatName);
+            return toStatus(job, true);
+        }
+
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            jobsByKey.remove(key, job);
+            throw new ExportThrottledException("Export queue is full, try again later",
+                    HttpStatus.SERVICE_UNAVAILABLE, ttl.toSeconds());
+        }
+        log.info("Export job {} queued for {} ({})", job.id, owner, formatName);
+        return toStatus(job, false);
+    }
+
+    @Override
+    public ExportJobStatusDto getStatus(String jobId) {
+        return toStatus(findOwnedJob(jobId), false);
+    }
+
+    @Override
+    public Path getArtifact(String jobId) {
+        ExportJob job = findOwnedJob(jobId);
+        if (job.state != State.COMPLETED || !Files.exists(job.file)) {
+            throw new ResourceNotFoundException("Export " + jobId + " has no finished file");
+        }
+        return job.file;
+    }
+
+    @Override
+    public String getContentType(String jobId) {
+        return findOwnedJob(jobId).format.getContentType();
+    }
+
+    @Scheduled(fixedDelayString = "${parcel.export.jobs.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        Instant now = Instant.now();
+        Iterator<ExportJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            ExportJob job = iterator.next();
+            if (job.isExpired(now)) {
+                iterator.remove();
+                jobsByKey.remove(job.key, job);
+                deleteQuietly(job.file);
+                log.info("Export job {} expired", job.id);
+            }
+        }
+    }
+
+    private void run(ExportJob job) {
+        Path part = directory.resolve(job.id + "." + job.formatName + ".part");
+        // Shares the export connection budget with streamed exports; stays QUEUED until admitted
+        int connections = job.parallel ? parallelCsvRenderer.maxConnections() : 1;
+        try (ExportBulkhead.Permit permit = bulkhead.acquireForJob(job.submittedBy, connections)) {
+            job.state = State.RUNNING;
+            long started = System.currentTimeMillis();
+            job.totalRows = rowSource.count(job.filter);
+            try (OutputStream out = new BufferedOutputStream(permit.track(Files.newOutputStream(part)), 64 * 1024)) {
+                if (job.parallel) {
+                    parallelCsvRenderer.render(job.filter, out, job.formatName.endsWith(".gz"), job.rowsWritten);
+                } else {
+                    renderSequential(job, out);
+                }
+            }
+            Path file = directory.resolve(job.id + "." + job.formatName);
+            Files.move(part, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            job.file = file;
+            job.sizeBytes = Files.size(file);
+            job.completedAt = Instant.now();
+            job.state = State.COMPLETED;
+            log.info("Export job {} completed: {} rows, {} bytes in {} ms", job.id, job.rowsWritten.get(),
+                    job.sizeBytes, System.currentTimeMillis() - started);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(part);
+            job.error = e.getMessage();
+            job.completedAt = Instant.now();
+            job.state = State.FAILED;
+            // A failed render must not be served to the next identical request
+            jobsByKey.remove(job.key, job);
+            log.error("Export job {} failed: {}", job.id, e.getMessage(), e);
+        }
+    }
+
+    private void renderSequential(ExportJob job, OutputStream out) throws IOException {
+        try (ParcelRowWriter writer = job.format.open(out)) {
+            rowSource.writeAll(job.filter, new ParcelRowWriter() {
+                @Override
+                public void write(Parcel parcel) throws IOException {
+                    writer.write(parcel);
+                    job.rowsWritten.incrementAndGet();
+                }
+
+                @Override
+                public void writeDeleted(ParcelTombstone tombstone) throws IOException {
+                    writer.writeDeleted(tombstone);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    writer.flush();
+                }
+
+                @Override
+                public void close() {
+                    // Closed by the outer try
+                }
+            });
+        }
+    }
+
+    private ExportJob findOwnedJob(String jobId) {
+        ExportJob job = jobs.get(jobId);
+        // Other users' jobs are reported as missing rather than forbidden
+        if (job == null || job.isExpired(Instant.now()) || !(job.owners.contains(currentUser()) || isAdmin())) {
+            throw new ResourceNotFoundException("Export job not found: " + jobId);
+        }
+        return job;
+    }
+
+    private ExportJobStatusDto toStatus(ExportJob job, boolean cached) {
+        long written = job.rowsWritten.get();
+        double progress = job.state == State.COMPLETED ? 100.0
+                : job.totalRows > 0 ? Math.min(99.99, Math.round(written * 10_000.0 / job.totalRows) / 100.0) : 0.0;
+        return ExportJobStatusDto.builder()
+                .jobId(job.id)
+                .format(job.formatName)
+                .state(job.state.name())
+                .totalRows(job.totalRows)
+                .rowsWritten(written)
+                .progressPercent(progress)
+                .sizeBytes(job.sizeBytes)
+                .fileName("parcels_" + job.id + "." + job.formatName)
+                .downloadUrl(job.state == State.COMPLETED ? String.format(DOWNLOAD_PATH, job.id) : null)
+                .error(job.error)
+                .cached(cached)
+                .createdAt(job.createdAt)
+                .completedAt(job.completedAt)
+                .expiresAt(job.completedAt != null ? job.completedAt.plus(ttl) : null)
+                .watermark(job.watermark)
+                .build();
+    }
+
+    private String cacheKey(String formatName, ExportFilterDTO filter) {
+        try {
+            String canonical = formatName + "|" + (filter == null ? "null" : objectMapper.writeValueAsString(filter));
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+
+    private static boolean isAdmin() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete export file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final class ExportJob {
+        final String id;
+        final String key;
+        final String submittedBy;
+        final String formatName;
+        final ParcelExportFormat format;
+        final ExportFilterDTO filter;
+        final boolean parallel;
+        final Instant createdAt = Instant.now();
+        final Set<String> owners = ConcurrentHashMap.newKeySet();
+        final AtomicLong rowsWritten = new AtomicLong();
+        volatile State state = State.QUEUED;
+        volatile long totalRows;
+        volatile long sizeBytes;
+        volatile Path file;
+        volatile Instant completedAt;
+        volatile String error;
+        volatile Instant watermark;
+
+        ExportJob(String id, String key, String submittedBy, String formatName, ParcelExportFormat format,
+                  ExportFilterDTO filter, boolean parallel) {
+            this.id = id;
+            this.key = key;
+            this.submittedBy = submittedBy;
+            this.formatName = formatName;
+            this.format = format;
+            this.filter = filter;
+            this.parallel = parallel;
+        }
+
+        boolean isReusable(Instant now) {
+            return state != State.FAILED && !isExpired(now);
+        }
+
+        boolean isExpired(Instant now) {
+            return completedAt != null && completedAt.plus(ttl).isBefore(now);
+        }
+    }
+}
@@ -1,21 +1,28 @@
 package com.pms.parcelServiceImple;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.Date;
-import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import com.pms.dto.ExportFilterDTO;
-import com.pms.entity.Parcel;
-import com.pms.repository.ParcelRepository;
+import com.pms.service.ExportBulkhead;
 import com.pms.service.ExportService;
+import com.pms.service.ParallelCsvExportRenderer;
+import com.pms.service.ParcelExportRowSource;
+import com.pms.util.CsvExporter;
 import com.pms.util.ExcelExporter;
+import com.pms.util.GzipExportFormat;
 import com.pms.util.PDFExporter;
+import com.pms.util.ParcelExportFormat;
+import com.pms.util.ParcelRowWriter;
 
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
@@ -24,78 +31,106 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ExportServiceImpl implements ExportService {
 
-    private final ParcelRepository parcelRepository;
+    private final ParcelExportRowSource rowSource;
     private final ExcelExporter excelExporter;
     private final PDFExporter pdfExporter;
+    private final CsvExporter csvExporter;
+    private final GzipExportFormat gzipCsvExporter;
+    private final ParallelCsvExportRenderer parallelCsvRenderer;
+    private final ExportBulkhead bulkhead;
 
     @Autowired
-    public ExportServiceImpl(ParcelRepository parcelRepository, 
+    public ExportServiceImpl(ParcelExportRowSource rowSource, 
                            ExcelExporter excelExporter, 
-                           PDFExporter pdfExporter) {
-        this.parcelRepository = parcelRepository;
+                           PDFExporter pdfExporter,
+                           CsvExporter csvExporter,
+                           ParallelCsvExportRenderer parallelCsvRenderer,
+                           ExportBulkhead bulkhead) {
+        this.rowSource = rowSource;
         this.excelExporter = excelExporter;
         this.pdfExporter = pdfExporter;
+        this.csvExporter = csvExporter;
+        this.gzipCsvExporter = new GzipExportFormat(csvExporter);
+        this.parallelCsvRenderer = parallelCsvRenderer;
+        this.bulkhead = bulkhead;
     }
 
     @Override
     public void exportParcelsToExcel(HttpServletResponse response, ExportFilterDTO filterDTO) throws IOException {
-        List<Parcel> parcels = getParcelsForExport(filterDTO);
-        log.info("Export parcel for recipient: {}", filterDTO.getDestinationCity());
-        response.setContentType("application/octet-stream");
-        DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss");
-        String currentDateTime = dateFormatter.format(new Date());
-        
-        String headerKey = "Content-Disposition";
-        String headerValue = "attachment; filename=parcels_" + currentDateTime + ".xlsx";
-        response.setHeader(headerKey, headerValue);
-        
-        excelExporter.export(parcels, response);
+        log.info("Export parcel for recipient: {}", filterDTO != null ? filterDTO.getDestinationCity() : null);
+        export(excelExporter, response, filterDTO);
     }
 
     @Override
     public void exportParcelsToPDF(HttpServletResponse response, ExportFilterDTO filterDTO) throws IOException {
-    	log.info("Export parcel as pdf formate for recipient: {}", filterDTO.getDestinationCity());
-        List<Parcel> parcels = getParcelsForExport(filterDTO);
-        
-        response.setContentType("application/pdf");
-        DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss");
-        String currentDateTime = dateFormatter.format(new Date());
-        
-        String headerKey = "Content-Disposition";
-        String headerValue = "attachment; filename=parcels_" + currentDateTime + ".pdf";
-        response.setHeader(headerKey, headerValue);
-        
-        pdfExporter.export(parcels, response);
+    	log.info("Export parcel as pdf formate for recipient: {}", filterDTO != null ? filterDTO.getDestinationCity() : null);
+        export(pdfExporter, response, filterDTO);
     }
 
-    private List<Parcel> getParcelsForExport(ExportFilterDTO filterDTO) {
-    	
-        if (filterDTO == null) {
-            return parcelRepository.findAll();
-        }
-        log.info("Export parcel as list in formate of pdf for recipient: {}", filterDTO.getDestinationCity());
-        Specification<Parcel> spec = Specification.where(null);
-        
-        if (filterDTO.getStatus() != null) {
-            spec = spec.and((root, query, cb) -> 
-                cb.equal(root.get("status"), filterDTO.getStatus()));
+    @Override
+    public void exportParcelsToCsv(HttpServletResponse response, ExportFilterDTO filterDTO, boolean parallel)
+            throws IOException {
+        log.info("Export parcel as csv for recipient: {}", filterDTO != null ? filterDTO.getDestinationCity() : null);
+        if (parallel) {
+            exportParallel(csvExporter, response, filterDTO, false);
+        } else {
+            export(csvExporter, response, filterDTO);
         }
-        
-        if (filterDTO.getStartDate() != null && filterDTO.getEndDate() != null) {
-            spec = spec.and((root, query, cb) -> 
-                cb.between(root.get("receivedAt"), filterDTO.getStartDate(), filterDTO.getEndDate()));
+    }
+
+    @Override
+    public void exportParcelsToCsvGzip(HttpServletResponse response, ExportFilterDTO filterDTO, boolean parallel)
+            throws IOException {
+        log.info("Export parcel as csv.gz for recipient: {}", filterDTO != null ? filterDTO.getDestinationCity() : null);
+        if (parallel) {
+            exportParallel(gzipCsvExporter, response, filterDTO, true);
+        } else {
+            export(gzipCsvExporter, response, filterDTO);
         }
-        
-        if (filterDTO.getOriginCity() != null) {
-            spec = spec.and((root, query, cb) -> 
-                cb.equal(root.get("originCity"), filterDTO.getOriginCity()));
+    }
+
+    // Cursor -> writer -> response; nothing is collected, so memory does not depend on the result size
+    private void export(ParcelExportFormat format, HttpServletResponse response, ExportFilterDTO filterDTO)
+            throws IOException {
+        // Admitted before anything is written, so a rejection can still become a 429/503
+        try (ExportBulkhead.Permit permit = bulkhead.acquire(currentUser(), 1)) {
+            setHeaders(format, response, rowSource.resolveWatermark(filterDTO));
+
+            long started = System.currentTimeMillis();
+            OutputStream out = permit.track(response.getOutputStream());
+            long rows;
+            try (ParcelRowWriter writer = format.open(out)) {
+                rows = rowSource.writeAll(filterDTO, writer);
+            }
+            out.flush();
+            log.info("Exported {} parcels as {} in {} ms", rows, format.getFileExtension(),
+                    System.currentTimeMillis() - started);
         }
-        
-        if (filterDTO.getDestinationCity() != null) {
-            spec = spec.and((root, query, cb) -> 
-                cb.equal(root.get("destinationCity"), filterDTO.getDestinationCity()));
+    }
+
+    // export(csvExporter, ...) rendered as id-range slices on the parallel export pool; each slice reads its
+    // own snapshot, see ParallelCsvExportRenderer for what that means under concurrent writes
+    private void exportParallel(ParcelExportFormat format, HttpServletResponse response, ExportFilterDTO filterDTO,
+                                boolean gzip) throws IOException {
+        try (ExportBulkhead.Permit permit = bulkhead.acquire(currentUser(), parallelCsvRenderer.maxConnections())) {
+            setHeaders(format, response, rowSource.resolveWatermark(filterDTO));
+            parallelCsvRenderer.render(filterDTO, permit.track(response.getOutputStream()), gzip, null);
         }
+    }
+
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+
+    private static void setHeaders(ParcelExportFormat format, HttpServletResponse response, Instant watermark) {
+        response.setContentType(format.getContentType());
+        response.setHeader(WATERMARK_HEADER, watermark.toString());
+        DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss");
+        String currentDateTime = dateFormatter.format(new Date());
         
-        return parcelRepository.findAll(spec);
+        String headerKey = "Content-Disposition";
+        String headerValue = "attachment; filename=parcels_" + currentDateTime + "." + format.getFileExtension();
+        response.setHeader(headerKey, headerValue);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+package com.pms.parcelServiceImple;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.pms.service.BlobStore;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Blobs as files under {@code file.upload-dir}, spread over two levels of directories named after
+ * the first four hex characters of the key ({@code ab/cd/abcd...}), 65,536 leaves in all, so no
+ * directory grows past a few thousand entries. Files still in the old flat layout are found there
+ * until {@link com.pms.service.UploadShardMigrator} has moved them; new files are only written
+ * sharded. Objects are published with a hard link or a rename, so a reader never sees a partial
+ * file.
+ */
+@Service
+@ConditionalOnProperty(name = "file.storage.type", havingValue = "local", matchIfMissing = true)
+@Slf4j
+public class LocalBlobStore implements BlobStore {
+
+    private static final Pattern SHARD_NAME = Pattern.compile("[0-9a-f]{2}");
+
+    private final Path root;
+    private final Path tempLocation;
+
+    public LocalBlobStore(@Value("${file.upload-dir}") String uploadDir) throws IOException {
+        this.root = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.tempLocation = this.root.resolve(".tmp");
+        Files.createDirectories(this.tempLocation);
+    }
+
+    @Override
+    public void put(String key, InputStream content, long size, String contentType) throws IOException {
+        Path target = resolve(key);
+        Path temp = Files.createTempFile(tempLocation, "put-", ".part");
+        try {
+            Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+            publish(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Staged uploads sit on the same volume: a hard link publishes them without copying a byte
+    @Override
+    public void put(String key, Path source, String contentType) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, source);
+            return;
+        } catch (FileAlreadyExistsException e) {
+            // Keys are content-addressed or unique: an existing object already holds these bytes
+            return;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.debug("Hard link not possible for {}, copying: {}", key, e.getMessage());
+        }
+        BlobStore.super.put(key, source, contentType);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        try {
+            return Files.newInputStream(locate(key));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("File not found " + key);
+        }
+    }
+
+    @Override
+    public FileChannel openLocal(String key) throws IOException {
+        try {
+            return FileChannel.open(locate(key), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("File not found " + key);
+        }
+    }
+
+    // Objects only leave through deleteAll, so the path can be opened later (sendfile)
+    @Override
+    public Path permanentFile(String key) throws IOException {
+        Path path = locate(key);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException("File not found " + key);
+        }
+        return path;
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return Files.isRegularFile(locate(key));
+    }
+
+    @Override
+    public long deleteAll(String keyPrefix) throws IOException {
+        if (keyPrefix.length() < SHARD_WIDTH) {
+            throw new IllegalArgumentException("Key prefix too short: " + keyPrefix);
+        }
+        return deleteMatching(resolve(keyPrefix).getParent(), keyPrefix) + deleteMatching(root, keyPrefix);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(locate(key));
+    }
+
+    // Flat-layout files are not listed; the migrator moves them into shards first
+    @Override
+    public List<String> shards(String parent) throws IOException {
+        Path directory = parent.isEmpty() ? root : root.resolve(parent);
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory,
+                entry -> Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)
+                        && SHARD_NAME.matcher(entry.getFileName().toString()).matches())) {
+            for (Path entry : entries) {
+                names.add(entry.getFileName().toString());
+            }
+        } catch (NoSuchFileException e) {
+            // Removed meanwhile
+        }
+        names.sort(null);
+        return names;
+    }
+
+    @Override
+    public List<StoredObject> list(String shard) throws IOException {
+        List<StoredObject> objects = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root.resolve(shard))) {
+            for (Path file : files) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (attributes.isRegularFile()) {
+                    objects.add(new StoredObject(file.getFileName().toString(), attributes.size(),
+                            attributes.lastModifiedTime().toInstant()));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Leaf removed meanwhile
+        }
+        return objects;
+    }
+
+    /**
+     * Files still in the flat layout (and the shard directories, which the caller skips).
+     */
+    public DirectoryStream<Path> flatDirectory() throws IOException {
+        return Files.newDirectoryStream(root);
+    }
+
+    /**
+     * Moves one file from the flat layout into its shard with a rename, so readers see it in one
+     * place or the other.
+     *
+     * @return false when the shard already had the file and the flat copy was dropped (or kept)
+     */
+    public boolean moveToShard(Path flatFile, boolean contentAddressed) throws IOException {
+        String key = flatFile.getFileName().toString();
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        if (Files.exists(target)) {
+            if (contentAddressed) {
+                // Same name, same bytes
+                Files.deleteIfExists(flatFile);
+            } else {
+                log.warn("{} exists in both layouts, leaving the flat copy", key);
+            }
+            return false;
+        }
+        Files.move(flatFile, target, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Where a stored file is now: its shard, or the flat directory if it has not been migrated.
+     * Falls back to the shard path when it is in neither.
+     */
+    private Path locate(String key) throws FileNotFoundException {
+        Path sharded = resolve(key);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flat = root.resolve(key);
+        // Checked second: a file the migrator moves in between is found at the shard path by the caller
+        return Files.exists(flat) ? flat : sharded;
+    }
+
+    // Shard path of a plain file name; names with separators, "..", or a leading dot are refused
+    private Path resolve(String key) throws FileNotFoundException {
+        Path flat = root.resolve(key).normalize();
+        if (!root.equals(flat.getParent()) || key.startsWith(".")) {
+            throw new FileNotFoundException("File not found " + key);
+        }
+        return root.resolve(BlobStore.shardedKey(key));
+    }
+
+    private void publish(Path temp, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        // A concurrent put of the same key may have renamed first; the content is the same either way
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long deleteMatching(Path directory, String keyPrefix) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        long freed = 0;
+        try (DirectoryStream<Path> matches = Files.newDirectoryStream(directory,
+                entry -> entry.getFileName().toString().startsWith(keyPrefix) && Files.isRegularFile(entry))) {
+            for (Path match : matches) {
+                try {
+                    long size = Files.size(match);
+                    if (Files.deleteIfExists(match)) {
+                        freed += size;
+                    }
+                } catch (NoSuchFileException e) {
+                    // Deleted concurrently
+                }
+            }
+        }
+        return freed;
+    }
+}
@@ -0,0 +1,448 @@
+package com.pms.parcelServiceImple;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pms.dto.BulkIngestResultDto;
+import com.pms.dto.BulkStatusUpdateDto;
+import com.pms.dto.BulkStatusUpdateResultDto;
+import com.pms.dto.ParcelDto;
+import com.pms.dto.StatusTransitionRejectionDto;
+import com.pms.entity.Parcel;
+import com.pms.exception.InvalidStatusException;
+import com.pms.repository.ParcelRepository;
+import com.pms.service.ParcelBulkService;
+import com.pms.service.DeliveryLatencyTracker;
+import com.pms.service.ParcelDailyStatsService;
+import com.pms.service.TrackingNumberCache;
+import com.pms.service.TrackingNumberGenerator;
+import com.pms.service.TrackingNumberGuard;
+import com.pms.util.CsvReader;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulk parcel ingestion. Rows are read from the request stream and written in chunks through
+ * plain JDBC batches: Parcel ids are IDENTITY generated, which stops Hibernate from batching
+ * inserts, so this path bypasses the persistence context entirely. Each chunk is one
+ * transaction; if it fails the chunk is replayed row by row to isolate the bad rows.
+ */
+@Service
+@Slf4j
+public class ParcelBulkServiceImpl implements ParcelBulkService {
+
+    private static final String INSERT_SQL = "INSERT INTO parcels (sender_name, recipient_name, recipient_email, "
+            + "tracking_number, received_at, delivered_at, estimated_delivery_at, origin_city, destination_city, "
+            + "shipping_cost, additional_fees, total_value, payment_method, parcel_type, weight_category, "
+            + "image_path, status, version, last_modified_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?)";
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ParcelRepository parcelRepository;
+    private final ObjectMapper objectMapper;
+    private final TrackingNumberCache trackingNumberCache;
+    private final TrackingNumberGuard trackingNumberGuard;
+    private final TrackingNumberGenerator trackingNumberGenerator;
+    private final ParcelDailyStatsService dailyStatsService;
+    private final DeliveryLatencyTracker deliveryLatencyTracker;
+    private final int batchSize;
+
+    @Autowired
+    public ParcelBulkServiceImpl(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 ParcelRepository parcelRepository,
+                                 ObjectMapper objectMapper,
+                                 TrackingNumberCache trackingNumberCache,
+                                 TrackingNumberGuard trackingNumberGuard,
+                                 TrackingNumberGenerator trackingNumberGenerator,
+                                 ParcelDailyStatsService dailyStatsService,
+                                 DeliveryLatencyTracker deliveryLatencyTracker,
+                                 @Value("${parcel.bulk.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.parcelRepository = parcelRepository;
+        this.objectMapper = objectMapper;
+        this.trackingNumberCache = trackingNumberCache;
+        this.trackingNumberGuard = trackingNumberGuard;
+        this.trackingNumberGenerator = trackingNumberGenerator;
+        this.dailyStatsService = dailyStatsService;
+        this.deliveryLatencyTracker = deliveryLatencyTracker;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public BulkIngestResultDto ingestJson(InputStream body) throws IOException {
+        BulkIngestResultDto result = new BulkIngestResultDto();
+        Set<String> seenTrackingNumbers = new HashSet<>();
+        List<PendingRow> chunk = new ArrayList<>(batchSize);
+        int rowNumber = 0;
+
+        try (MappingIterator<ParcelDto> rows = objectMapper.readerFor(ParcelDto.class).readValues(body)) {
+            while (rows.hasNextValue()) {
+                rowNumber++;
+                try {
+                    chunk.add(new PendingRow(rowNumber, rows.nextValue()));
+                } catch (JsonMappingException e) {
+                    // Malformed element: record it and let the iterator resync on the next value
+                    result.addError(rowNumber, null, "Invalid parcel: " + e.getOriginalMessage());
+                }
+                if (chunk.size() >= batchSize) {
+                    flushChunk(chunk, seenTrackingNumbers, result);
+                }
+            }
+        }
+        flushChunk(chunk, seenTrackingNumbers, result);
+        result.setReceived(rowNumber);
+        log.info("Bulk JSON ingest finished: {} received, {} inserted, {} failed",
+                result.getReceived(), result.getInserted(), result.getFailed());
+        return result;
+    }
+
+    @Override
+    public BulkIngestResultDto ingestCsv(InputStream body) throws IOException {
+        BulkIngestResultDto result = new BulkIngestResultDto();
+        Set<String> seenTrackingNumbers = new HashSet<>();
+        List<PendingRow> chunk = new ArrayList<>(batchSize);
+        int rowNumber = 0;
+
+        try (CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)))) {
+            String[] header = reader.readRecord();
+            if (header == null) {
+                return result;
+            }
+            String[] record;
+            while ((record = reader.readRecord()) != null) {
+                if (record.length == 1 && record[0].isBlank()) {
+                    continue;
+                }
+                rowNumber++;
+                try {
+                    chunk.add(new PendingRow(rowNumber, toParcelDto(header, record)));
+                } catch (RuntimeException e) {
+                    result.addError(rowNumber, null, "Invalid parcel: " + e.getMessage());
+                }
+                if (chunk.size() >= batchSize) {
+                    flushChunk(chunk, seenTrackingNumbers, result);
+                }
+            }
+        }
+        flushChunk(chunk, seenTrackingNumbers, result);
+        result.setReceived(rowNumber);
+        log.info("Bulk CSV ingest finished: {} received, {} inserted, {} failed",
+                result.getReceived(), result.getInserted(), result.getFailed());
+        return result;
+    }
+
+    @Override
+    @Transactional
+    public BulkStatusUpdateResultDto transitionStatus(BulkStatusUpdateDto request) {
+        Parcel.ParcelStatus target = parseStatus(request.getStatus());
+        Set<Parcel.ParcelStatus> sources = target.allowedSources();
+        BulkStatusUpdateResultDto result = new BulkStatusUpdateResultDto();
+        result.setStatus(target.name());
+
+        // 1. Resolve ids and tracking numbers to (id, trackingNumber, status) in at most two queries
+        Map<Long, Object[]> found = new LinkedHashMap<>();
+        Set<String> foundTrackingNumbers = new HashSet<>();
+        if (request.getIds() != null && !request.getIds().isEmpty()) {
+            parcelRepository.findStatusByIds(request.getIds()).forEach(row -> found.put((Long) row[0], row));
+        }
+        if (request.getTrackingNumbers() != null && !request.getTrackingNumbers().isEmpty()) {
+            parcelRepository.findStatusByTrackingNumbers(request.getTrackingNumbers())
+                    .forEach(row -> found.put((Long) row[0], row));
+        }
+        found.values().forEach(row -> foundTrackingNumbers.add((String) row[1]));
+
+        if (request.getIds() != null) {
+            request.getIds().stream().distinct().filter(id -> !found.containsKey(id)).forEach(id ->
+                    result.getRejected().add(new StatusTransitionRejectionDto(id, null, null, "Parcel not found")));
+        }
+        if (request.getTrackingNumbers() != null) {
+            request.getTrackingNumbers().stream().distinct().filter(tn -> !foundTrackingNumbers.contains(tn)).forEach(tn ->
+                    result.getRejected().add(new StatusTransitionRejectionDto(null, tn, null, "Parcel not found")));
+        }
+
+        // 2. Check the transition table before touching the database
+        List<Long> eligible = new ArrayList<>();
+        for (Object[] row : found.values()) {
+            Parcel.ParcelStatus current = (Parcel.ParcelStatus) row[2];
+            if (current != null && sources.contains(current)) {
+                eligible.add((Long) row[0]);
+            } else {
+                result.getRejected().add(rejection(row, current == target
+                        ? "Parcel is already " + target
+                        : "Cannot transition from " + current + " to " + target));
+            }
+        }
+        if (eligible.isEmpty()) {
+            return result;
+        }
+
+        // 3. One UPDATE for the whole set; the WHERE clause re-validates the source state.
+        //    The rollup buckets move with it: out of the source status before, into the target after.
+        List<String> sourceNames = sources.stream().map(Enum::name).toList();
+        dailyStatsService.subtract(eligible, sourceNames);
+        Instant now = Instant.now();
+        int updated = target == Parcel.ParcelStatus.DELIVERED
+                ? parcelRepository.updateStatusDelivered(eligible, sources, target, now)
+                : parcelRepository.updateStatus(eligible, sources, target, now);
+
+        if (updated == eligible.size()) {
+            result.getTransitioned().addAll(eligible);
+        } else {
+            // Some rows changed between the read and the update; report what actually happened
+            for (Object[] row : parcelRepository.findStatusByIds(eligible)) {
+                if (row[2] == target) {
+                    result.getTransitioned().add((Long) row[0]);
+                } else {
+                    result.getRejected().add(rejection(row, "Status changed concurrently"));
+                }
+            }
+        }
+        dailyStatsService.add(result.getTransitioned());
+        if (target == Parcel.ParcelStatus.DELIVERED && !result.getTransitioned().isEmpty()) {
+            deliveryLatencyTracker.recordAllAfterCommit(
+                    parcelRepository.findDeliveryLatencyInputs(result.getTransitioned()));
+        }
+        result.getTransitioned().forEach(id -> trackingNumberCache.evict((String) found.get(id)[1]));
+        log.info("Bulk status transition to {}: {} transitioned, {} rejected",
+                target, result.getTransitioned().size(), result.getRejected().size());
+        return result;
+    }
+
+    private Parcel.ParcelStatus parseStatus(String status) {
+        if (status == null || status.isBlank()) {
+            throw new InvalidStatusException("Target status is required");
+        }
+        try {
+            return Parcel.ParcelStatus.valueOf(status.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidStatusException("Unknown status: " + status);
+        }
+    }
+
+    private StatusTransitionRejectionDto rejection(Object[] row, String reason) {
+        Object status = row[2];
+        return new StatusTransitionRejectionDto((Long) row[0], (String) row[1],
+                status != null ? status.toString() : null, reason);
+    }
+
+    private void flushChunk(List<PendingRow> chunk, Set<String> seenTrackingNumbers, BulkIngestResultDto result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        // 1. Validate rows and collect caller-supplied tracking numbers
+        List<PendingRow> valid = new ArrayList<>(chunk.size());
+        Set<String> supplied = new HashSet<>();
+        int missingTrackingNumbers = 0;
+        for (PendingRow row : chunk) {
+            ParcelDto parcel = row.getParcel();
+            if (parcel == null) {
+                result.addError(row.getRow(), null, "Parcel cannot be null");
+                continue;
+            }
+            try {
+                parcel.getStatusAsEnum();
+            } catch (IllegalArgumentException e) {
+                result.addError(row.getRow(), parcel.getTrackingNumber(), "Unknown status: " + parcel.getStatus());
+                continue;
+            }
+            String trackingNumber = parcel.getTrackingNumber();
+            if (trackingNumber == null || trackingNumber.isEmpty()) {
+                missingTrackingNumbers++;
+            } else if (!seenTrackingNumbers.add(trackingNumber)) {
+                result.addError(row.getRow(), trackingNumber, "Duplicate tracking number in request");
+                continue;
+            } else {
+                supplied.add(trackingNumber);
+            }
+            if (parcel.getReceivedAt() == null) {
+                parcel.setReceivedAt(Instant.now());
+            }
+            valid.add(row);
+        }
+
+        // 2. One lookup per chunk for tracking numbers that already exist
+        if (!supplied.isEmpty()) {
+            Set<String> existing = new HashSet<>(parcelRepository.findExistingTrackingNumbers(supplied));
+            if (!existing.isEmpty()) {
+                valid.removeIf(row -> {
+                    String trackingNumber = row.getParcel().getTrackingNumber();
+                    if (trackingNumber != null && existing.contains(trackingNumber)) {
+                        result.addError(row.getRow(), trackingNumber, "Tracking number already exists");
+                        return true;
+                    }
+                    return false;
+                });
+            }
+        }
+
+        // 3. Allocate tracking numbers for the whole chunk at once
+        if (missingTrackingNumbers > 0) {
+            List<String> allocated = allocateTrackingNumbers(missingTrackingNumbers, seenTrackingNumbers);
+            int next = 0;
+            for (PendingRow row : valid) {
+                String trackingNumber = row.getParcel().getTrackingNumber();
+                if (trackingNumber == null || trackingNumber.isEmpty()) {
+                    row.getParcel().setTrackingNumber(allocated.get(next++));
+                }
+            }
+        }
+
+        // 4. Insert the chunk as a single JDBC batch
+        insertChunk(valid, result);
+        chunk.clear();
+    }
+
+    private void insertChunk(List<PendingRow> rows, BulkIngestResultDto result) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Calendar utc = Calendar.getInstance(UTC);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(),
+                        (ps, row) -> bindParcel(ps, row.getParcel(), utc));
+                dailyStatsService.addByTrackingNumbers(rows.stream()
+                        .map(row -> row.getParcel().getTrackingNumber()).toList());
+            });
+            result.setInserted(result.getInserted() + rows.size());
+            rows.forEach(row -> trackingNumberGuard.register(row.getParcel().getTrackingNumber()));
+        } catch (DataAccessException e) {
+            log.warn("Bulk chunk of {} rows failed, retrying row by row: {}", rows.size(), e.getMostSpecificCause().getMessage());
+            for (PendingRow row : rows) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        jdbcTemplate.update(INSERT_SQL, ps -> bindParcel(ps, row.getParcel(), utc));
+                        dailyStatsService.addByTrackingNumbers(List.of(row.getParcel().getTrackingNumber()));
+                    });
+                    result.setInserted(result.getInserted() + 1);
+                    trackingNumberGuard.register(row.getParcel().getTrackingNumber());
+                } catch (DataAccessException rowError) {
+                    result.addError(row.getRow(), row.getParcel().getTrackingNumber(),
+                            rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    private List<String> allocateTrackingNumbers(int count, Set<String> reserved) {
+        // Generated numbers are unique by construction, so no existence check is needed
+        List<String> allocated = trackingNumberGenerator.next(count);
+        reserved.addAll(allocated);
+        return allocated;
+    }
+
+    private void bindParcel(PreparedStatement ps, ParcelDto parcel, Calendar utc) throws SQLException {
+        ps.setString(1, parcel.getSenderName());
+        ps.setString(2, parcel.getRecipientName());
+        ps.setString(3, parcel.getRecipientEmail());
+        ps.setString(4, parcel.getTrackingNumber());
+        setInstant(ps, 5, parcel.getReceivedAt(), utc);
+        setInstant(ps, 6, parcel.getDeliveredAt(), utc);
+        setInstant(ps, 7, parcel.getEstimatedDeliveryAt(), utc);
+        ps.setString(8, parcel.getOriginCity());
+        ps.setString(9, parcel.getDestinationCity());
+        setDecimal(ps, 10, parcel.getShippingCost());
+        setDecimal(ps, 11, parcel.getAdditionalFees());
+        setDecimal(ps, 12, parcel.getTotalValue());
+        ps.setString(13, parcel.getPaymentMethod());
+        ps.setString(14, parcel.getParcelType());
+        ps.setString(15, parcel.getWeightCategory());
+        ps.setString(16, parcel.getImagePath());
+        ps.setString(17, parcel.getStatus());
+        // Entity callbacks do not run on this path; the row counts as changed now for delta exports
+        setInstant(ps, 18, Instant.now(), utc);
+    }
+
+    // Bound the same way Hibernate binds Instant (UTC calendar) so both write paths agree
+    private void setInstant(PreparedStatement ps, int index, Instant value, Calendar utc) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.TIMESTAMP);
+        } else {
+            ps.setTimestamp(index, Timestamp.from(value), utc);
+        }
+    }
+
+    private void setDecimal(PreparedStatement ps, int index, BigDecimal value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DECIMAL);
+        } else {
+            ps.setBigDecimal(index, value);
+        }
+    }
+
+    private ParcelDto toParcelDto(String[] header, String[] record) {
+        ParcelDto parcel = new ParcelDto();
+        for (int i = 0; i < header.length && i < record.length; i++) {
+            String value = record[i].trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (header[i].trim().replace("_", "").toLowerCase()) {
+                case "sendername" -> parcel.setSenderName(value);
+                case "recipientname" -> parcel.setRecipientName(value);
+                case "recipientemail" -> parcel.setRecipientEmail(value);
+                case "trackingnumber" -> parcel.setTrackingNumber(value);
+                case "status" -> parcel.setStatus(value.toUpperCase());
+                case "receivedat" -> parcel.setReceivedAt(Instant.parse(value));
+                case "deliveredat" -> parcel.setDeliveredAt(Instant.parse(value));
+                case "estimateddeliveryat" -> parcel.setEstimatedDeliveryAt(Instant.parse(value));
+                case "origincity" -> parcel.setOriginCity(value);
+                case "destinationcity" -> parcel.setDestinationCity(value);
+                case "shippingcost" -> parcel.setShippingCost(new BigDecimal(value));
+                case "additionalfees" -> parcel.setAdditionalFees(new BigDecimal(value));
+                case "totalvalue" -> parcel.setTotalValue(new BigDecimal(value));
+                case "paymentmethod" -> parcel.setPaymentMethod(value);
+                case "parceltype" -> parcel.setParcelType(value);
+                case "weightcategory" -> parcel.setWeightCategory(value);
+                default -> {
+                    // Unknown columns (id, imagePath, ...) are ignored
+                }
+            }
+        }
+        return parcel;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class PendingRow {
+        private int row;
+        private ParcelDto parcel;
+    }
+}
@@ -0,0 +1,63 @@
+package com.pms.parcelServiceImple;
+
+import java.util.Collection;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.pms.repository.ParcelDailyStatRepository;
+import com.pms.service.ParcelDailyStatsService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@RequiredArgsConstructor
+@Transactional
+@Slf4j
+public class ParcelDailyStatsServiceImpl implements ParcelDailyStatsService {
+
+    private final ParcelDailyStatRepository statRepository;
+
+    @Override
+    public void add(Collection<Long> parcelIds) {
+        if (!parcelIds.isEmpty()) {
+            statRepository.applyByIds(parcelIds, 1);
+        }
+    }
+
+    @Override
+    public void subtract(Collection<Long> parcelIds) {
+        if (!parcelIds.isEmpty()) {
+            statRepository.applyByIds(parcelIds, -1);
+        }
+    }
+
+    @Override
+    public void subtract(Collection<Long> parcelIds, Collection<String> statuses) {
+        if (!parcelIds.isEmpty() && !statuses.isEmpty()) {
+            statRepository.applyByIdsAndStatuses(parcelIds, statuses, -1);
+        }
+    }
+
+    @Override
+    public void addByTrackingNumbers(Collection<String> trackingNumbers) {
+        if (!trackingNumbers.isEmpty()) {
+            statRepository.applyByTrackingNumbers(trackingNumbers, 1);
+        }
+    }
+
+    /**
+     * Nightly safety net; runs in one transaction so concurrent incremental updates wait for it.
+     */
+    @Override
+    @Scheduled(cron = "${parcel.rollup.rebuild-cron:0 30 2 * * *}")
+    public int rebuild() {
+        long started = System.currentTimeMillis();
+        statRepository.deleteAllStats();
+        int buckets = statRepository.rebuildAllStats();
+        log.info("Parcel daily stats rebuilt: {} buckets in {} ms", buckets, System.currentTimeMillis() - started);
+        return buckets;
+    }
+}
@@ -1,10 +1,16 @@
 package com.pms.parcelServiceImple;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -12,31 +18,76 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.pms.dto.ParcelCursorPageDto;
 import com.pms.dto.ParcelDto;
 import com.pms.entity.Parcel;
+import com.pms.entity.ParcelTombstone;
+import com.pms.exception.InvalidPageRequestException;
 import com.pms.exception.ResourceNotFoundException;
 import com.pms.mapper.ParcelMapper;
 import com.pms.repository.ParcelRepository;
+import com.pms.repository.ParcelTombstoneRepository;
 import com.pms.service.FileStorageService;
+import com.pms.service.FileStorageService.StagedUpload;
+import com.pms.service.ImageVariantService;
+import com.pms.service.DeliveryLatencyTracker;
+import com.pms.service.ParcelDailyStatsService;
 import com.pms.service.ParcelService;
+import com.pms.service.TrackingNumberCache;
+import com.pms.service.TrackingNumberGenerator;
+import com.pms.service.TrackingNumberGuard;
 
-import jakarta.transaction.Transactional;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
 @Slf4j
 public class ParcelServiceImpl implements ParcelService {
 
+	private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
 	@Autowired
 	private ParcelRepository parcelRepository;
 
+	@Autowired
+	private ParcelTombstoneRepository tombstoneRepository;
+
 	@Autowired
 	private FileStorageService fileStorageService;
 
+	@Autowired
+	private ImageVariantService imageVariantService;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private TrackingNumberCache trackingNumberCache;
+
+	@Autowired
+	private TrackingNumberGuard trackingNumberGuard;
+
+	@Autowired
+	private TrackingNumberGenerator trackingNumberGenerator;
+
+	@Autowired
+	private ParcelDailyStatsService dailyStatsService;
+
+	@Autowired
+	private DeliveryLatencyTracker deliveryLatencyTracker;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	// Not @Transactional: the upload is staged first, without holding a connection, and only the
+	// reference and the insert run in a (short) transaction
 	@Override
-	@Transactional
 	public ParcelDto createParcelWithImage(ParcelDto parcelDto) throws IOException {
 		// 1.Validate input
 		if (parcelDto == null) {
@@ -49,10 +100,30 @@ public class ParcelServiceImpl implements ParcelService {
 			throw new IllegalArgumentException("File cannot be empty");
 		}
 
-		// Handle file upload if present
-		if (file != null && !file.isEmpty()) {
-			String fileName = fileStorageService.storeFile(file);
-			parcelDto.setImagePath("/api/parcels/image/" + fileName);
+		// Stage and publish the upload before the transaction starts
+		StagedUpload upload = file != null && !file.isEmpty() ? fileStorageService.stage(file) : null;
+		try {
+			return new TransactionTemplate(transactionManager).execute(status -> createParcel(parcelDto, upload));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			if (upload != null) {
+				fileStorageService.discard(upload);
+			}
+		}
+	}
+
+	private ParcelDto createParcel(ParcelDto parcelDto, StagedUpload upload) {
+		// Reference the staged image; identical images share one stored file
+		if (upload != null) {
+			String fileName;
+			try {
+				fileName = fileStorageService.commit(upload);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			imageVariantService.scheduleAfterCommit(fileName);
+			parcelDto.setImagePath(FileStorageService.IMAGE_PATH_PREFIX + fileName);
 		}
 
 		// 2.Generate tracking number if not provided
@@ -67,14 +138,16 @@ public class ParcelServiceImpl implements ParcelService {
 		// 4. Convert DTO → Entity (after all DTO modifications)
 		Parcel parcel = ParcelMapper.toEntity(parcelDto);
 		// 5. Save to database
-		Parcel savedParcel = parcelRepository.save(parcel);
+		Parcel savedParcel = parcelRepository.saveAndFlush(parcel);
+		dailyStatsService.add(List.of(savedParcel.getId()));
+		trackingNumberGuard.register(savedParcel.getTrackingNumber());
 		log.info("Parcel Successfulley Created: {}", parcelDto.getRecipientName());
 		// 6. Return the saved entity as DTO
 		return ParcelMapper.toDTO(savedParcel);
 	}
 
 	private String generateTrackingNumber() {
-		return "PM" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+		return trackingNumberGenerator.next();
 	}
 
 	@Transactional
@@ -95,20 +168,28 @@ public class ParcelServiceImpl implements ParcelService {
 	        );
 	    }
 
-	    // 4. Update status and timestamp
+	    // 4. Update status and timestamp (rollup bucket moves with the status)
+	    dailyStatsService.subtract(List.of(parcelId));
 	    parcel.setStatus(Parcel.ParcelStatus.DELIVERED);
 	    parcel.setDeliveredAt(Instant.now());
 
 	    // 5. Save and return
-	    Parcel updatedParcel = parcelRepository.save(parcel);
+	    Parcel updatedParcel = parcelRepository.saveAndFlush(parcel);
+	    dailyStatsService.add(List.of(parcelId));
+	    trackingNumberCache.evict(updatedParcel.getTrackingNumber());
+	    deliveryLatencyTracker.recordAfterCommit(updatedParcel.getDestinationCity(), updatedParcel.getParcelType(),
+	            updatedParcel.getReceivedAt(), updatedParcel.getDeliveredAt());
 	    return ParcelMapper.toDTO(updatedParcel);
 	}
 	@Override
+	@Transactional
 	public ParcelDto updateParcel(Long id, ParcelDto parcelDto) {
 		
 		// 1. Find existing entity
 	    Parcel existingParcel  = parcelRepository.findById(id)
 	            .orElseThrow(() -> new ResourceNotFoundException("Parcel not found"));
+	    // Take the current row out of the rollup before any field changes
+	    dailyStatsService.subtract(List.of(id));
 	    
 	    // 2. Update fields (never set the ID)
 	    //parcelObj.setId(parcelDto.getId());
@@ -121,7 +202,9 @@ public class ParcelServiceImpl implements ParcelService {
 	    existingParcel.setDeliveredAt(parcelDto.getDeliveredAt());
 	    
 	    // 3. Save updated entity
-        Parcel updatedParcel = parcelRepository.save(existingParcel);
+        Parcel updatedParcel = parcelRepository.saveAndFlush(existingParcel);
+        dailyStatsService.add(List.of(id));
+        trackingNumberCache.evict(updatedParcel.getTrackingNumber());
         log.info("Parcel Successfully updated whose name is : {}", parcelDto.getRecipientName());
         return ParcelMapper.toDTO(updatedParcel);
 	}
@@ -135,6 +218,24 @@ public class ParcelServiceImpl implements ParcelService {
 		
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	public long streamAllParcels(Consumer<ParcelDto> consumer) {
+		long count = 0;
+		try (Stream<Parcel> parcels = parcelRepository.streamAll()) {
+			Iterator<Parcel> iterator = parcels.iterator();
+			while (iterator.hasNext()) {
+				Parcel parcel = iterator.next();
+				consumer.accept(ParcelMapper.toDTO(parcel));
+				// Detach as we go so the persistence context does not grow with the table
+				entityManager.detach(parcel);
+				count++;
+			}
+		}
+		log.info("{} :: Parcels Successfully Streamed From Database", count);
+		return count;
+	}
+
 	@Override
 	public ParcelDto getParcelById(Long id) {
 		return ParcelMapper.toDTO(
@@ -142,19 +243,36 @@ public class ParcelServiceImpl implements ParcelService {
 	}
 
 	@Override
+	@Transactional
 	public void deleteParcel(Long id) {
+		parcelRepository.findById(id).ifPresent(parcel -> {
+			dailyStatsService.subtract(List.of(id));
+			parcelRepository.delete(parcel);
+			// Lets delta exports propagate the delete
+			tombstoneRepository.save(new ParcelTombstone(parcel, Instant.now()));
+			// The image blob goes once no other parcel references it
+			if (parcel.getImagePath() != null) {
+				fileStorageService.release(parcel.getImagePath().substring(parcel.getImagePath().lastIndexOf('/') + 1));
+			}
+			trackingNumberCache.evict(parcel.getTrackingNumber());
+		});
 		log.info("Parcels Successfully deleted whose id :: {}",id);
-		parcelRepository.deleteById(id);
 	}
 
 	
 	// This method for tracking parcel
 	@Override
 	public ParcelDto getParcelByTrackingNumber(String trackingNumber) {
-		 Parcel parcel = parcelRepository.findByTrackingNumber(trackingNumber)
-	                .orElseThrow(() -> new ResourceNotFoundException(
-	                    "Parcel not found with tracking number: " + trackingNumber));
-	        return ParcelMapper.toDTO(parcel);
+		return trackingNumberCache.get(trackingNumber, number -> {
+			Parcel parcel = parcelRepository.findByTrackingNumber(number)
+					.orElseThrow(() -> new ResourceNotFoundException(
+							"Parcel not found with tracking number: " + number));
+			return ParcelMapper.toDTO(parcel);
+		});
+	}
+	@Override
+	public boolean trackingNumberMightExist(String trackingNumber) {
+		return trackingNumberGuard.mightExist(trackingNumber);
 	}
 /*-------------------------------------------------Pagination Code Start -------------------------------------------*/
 	// This method for pagination
@@ -181,6 +299,57 @@ public class ParcelServiceImpl implements ParcelService {
 	        return parcelRepository.findByStatus(status, pageable).map(this::convertToDto);
 	}
 	
+	// This method for keyset pagination: cost is independent of how deep the client has paged
+	@Override
+	public ParcelCursorPageDto getParcelsByCursor(String cursor, int size) {
+		if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+			throw new InvalidPageRequestException("Page size must be between 1 and " + MAX_CURSOR_PAGE_SIZE);
+		}
+
+		// Fetch one extra row to learn whether another page exists without a COUNT(*)
+		Pageable limit = PageRequest.of(0, size + 1);
+		List<Parcel> rows;
+		if (cursor == null || cursor.isBlank()) {
+			rows = parcelRepository.findKeysetFirstPage(limit);
+		} else {
+			String[] key = decodeCursor(cursor);
+			rows = parcelRepository.findKeysetPageAfter(cursorInstant(key), Long.parseLong(key[2]), limit);
+		}
+
+		boolean hasNext = rows.size() > size;
+		if (hasNext) {
+			rows = rows.subList(0, size);
+		}
+		String nextCursor = hasNext ? encodeCursor(rows.get(rows.size() - 1)) : null;
+
+		List<ParcelDto> content = rows.stream().map(this::convertToDto).collect(Collectors.toList());
+		return new ParcelCursorPageDto(content, content.size(), nextCursor, hasNext);
+	}
+
+	private String encodeCursor(Parcel last) {
+		String key = last.getReceivedAt().getEpochSecond() + ":" + last.getReceivedAt().getNano() + ":" + last.getId();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String[] decodeCursor(String cursor) {
+		try {
+			String[] key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+			if (key.length != 3) {
+				throw new IllegalArgumentException("Invalid cursor");
+			}
+			// Validate eagerly so a tampered token fails here rather than inside the query
+			cursorInstant(key);
+			Long.parseLong(key[2]);
+			return key;
+		} catch (IllegalArgumentException | DateTimeException e) {
+			throw new InvalidPageRequestException("Invalid cursor: " + cursor, e);
+		}
+	}
+
+	private static Instant cursorInstant(String[] key) {
+		return Instant.ofEpochSecond(Long.parseLong(key[0]), Long.parseLong(key[1]));
+	}
+
 	private ParcelDto convertToDto(Parcel parcel) {
 	    if (parcel == null) {
 	        return null;
@@ -3,6 +3,9 @@ package com.pms.parcelServiceImple;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -12,12 +15,16 @@ import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
+import com.pms.dto.DailyDeliveryPerformanceDTO;
+import com.pms.dto.DeliveryLatencyDTO;
 import com.pms.dto.DeliveryPerformanceReportDTO;
 import com.pms.dto.ReportSummaryDTO;
 import com.pms.dto.ReportSummaryProjection;
 import com.pms.dto.StatusReportDTO;
 import com.pms.entity.Parcel;
 import com.pms.repository.ReportRepository;
+import com.pms.service.DeliveryLatencyTracker;
+import com.pms.service.ParcelDailyStatsService;
 import com.pms.service.ReportService;
 
 import lombok.RequiredArgsConstructor;
@@ -27,10 +34,15 @@ import lombok.RequiredArgsConstructor;
 public class ReportServiceImpl implements ReportService {
 
     private final ReportRepository reportRepository;
+    private final ParcelDailyStatsService dailyStatsService;
+    private final DeliveryLatencyTracker deliveryLatencyTracker;
 
     @Override
     public ReportSummaryDTO generateSummaryReport(Instant start, Instant end) {
-        List<ReportSummaryProjection> projections = reportRepository.getSummaryReportMetrics(start, end);
+        // The rollup is kept per UTC day, so the range is widened to whole days
+        LocalDate startDay = LocalDate.ofInstant(start, ZoneOffset.UTC);
+        LocalDate endDay = LocalDate.ofInstant(end, ZoneOffset.UTC);
+        List<ReportSummaryProjection> projections = reportRepository.getSummaryReportMetrics(startDay, endDay);
 
         ReportSummaryDTO dto = new ReportSummaryDTO();
         dto.setTotalParcels(0L);
@@ -55,11 +67,11 @@ public class ReportServiceImpl implements ReportService {
         dto.setMonthlyCounts(monthlyMap);
         
         // 💡 Fetch and set payment method distribution
-        List<Object[]> methodCounts = reportRepository.findPaymentMethodCounts(start, end);
+        List<Object[]> methodCounts = reportRepository.findPaymentMethodCounts(startDay, endDay);
         Map<String, Long> methodMap = new HashMap<>();
         for (Object[] row : methodCounts) {
             String method = (String) row[0];
-            Long count = (Long) row[1];
+            Long count = row[1] != null ? ((Number) row[1]).longValue() : 0L;
             methodMap.put(method, count);
         }
 
@@ -102,13 +114,31 @@ public class ReportServiceImpl implements ReportService {
 
     @Override
     public DeliveryPerformanceReportDTO generateDeliveryPerformanceReport(Integer month, Integer year, String city, String parcelType) {
-        List<Parcel> deliveredParcels = reportRepository.findDeliveredParcelsForReport(month, year, city, parcelType);
-
-        long totalDelivered = deliveredParcels.size();
-        long onTimeCount = deliveredParcels.stream()
-            .filter(p -> p.getEstimatedDeliveryAt() != null && !p.getDeliveredAt().isAfter(p.getEstimatedDeliveryAt()))
-            .count();
+        // Half-open [first of month, first of next month) range in UTC
+        YearMonth period = YearMonth.of(year, month);
+        Instant from = period.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant to = period.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+        List<Object[]> rows = reportRepository.findDailyDeliveryCounts(from, to, city, parcelType);
+
+        long totalDelivered = 0;
+        long onTimeCount = 0;
+        List<DailyDeliveryPerformanceDTO> daily = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            long dayTotal = row[1] != null ? ((Number) row[1]).longValue() : 0L;
+            long dayOnTime = row[2] != null ? ((Number) row[2]).longValue() : 0L;
+            totalDelivered += dayTotal;
+            onTimeCount += dayOnTime;
+            daily.add(DailyDeliveryPerformanceDTO.builder()
+                    .date(toLocalDate(row[0]))
+                    .totalDelivered(dayTotal)
+                    .onTimeDeliveries(dayOnTime)
+                    .lateDeliveries(dayTotal - dayOnTime)
+                    .onTimePercentage(percentage(dayOnTime, dayTotal))
+                    .build());
+        }
 
+        long lateCount = totalDelivered - onTimeCount;
         double performance = totalDelivered == 0 ? 0.0 : (onTimeCount * 100.0 / totalDelivered);
 
         return DeliveryPerformanceReportDTO.builder()
@@ -116,10 +146,38 @@ public class ReportServiceImpl implements ReportService {
                 .year(year)
                 .totalDelivered(totalDelivered)
                 .onTimeDeliveries(onTimeCount)
+                .onTimePercentage(percentage(onTimeCount, totalDelivered))
+                .lateDeliveries(lateCount)
+                .latePercentage(percentage(lateCount, totalDelivered))
                 .performancePercentage(performance)
+                .daily(daily)
                 .build();
     }
 
+    private static double percentage(long part, long total) {
+        double percentage = total > 0 ? (part * 100.0 / total) : 0.0;
+        return Math.round(percentage * 100.0) / 100.0;
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof java.sql.Date date) {
+            return date.toLocalDate();
+        }
+        return (LocalDate) value;
+    }
+
+
+	@Override
+	public List<DeliveryLatencyDTO> getDeliveryLatency(String city, String parcelType) {
+		return deliveryLatencyTracker.snapshot(city, parcelType);
+	}
+
+
+	@Override
+	public int rebuildDailyStats() {
+		return dailyStatsService.rebuild();
+	}
+
 
 	@Override
 	public ResponseEntity<Resource> exportToExcel(Instant startDate, Instant endDate) throws IOException {
@@ -0,0 +1,527 @@
+package com.pms.parcelServiceImple;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.pms.service.BlobStore;
+import com.pms.util.AwsSigV4Signer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Blobs in an S3-compatible bucket (AWS S3, MinIO, Ceph RGW...), so several instances share one
+ * store. Talks to the REST API directly over the JDK HttpClient with Signature V4 and path-style
+ * addressing; object keys use the same {@code ab/cd/<key>} layout as the local store.
+ *
+ * Objects of at least {@code multipart-threshold} bytes are uploaded in parts of
+ * {@code part-size} bytes, one part in memory at a time; a failed multipart upload is aborted.
+ * Bodies are sent as UNSIGNED-PAYLOAD so they can be streamed, which relies on TLS for integrity
+ * outside a trusted network.
+ *
+ * {@link #openLocal} reads through a disk cache under {@code cache-dir}, bounded by
+ * {@code cache-max-bytes} (Caffeine's size-bounded eviction); objects never change, so cached copies
+ * only leave when evicted or deleted through this instance. Callers get an open channel, never a
+ * path: eviction deletes the file, which an open channel outlives, and a copy can be evicted as
+ * soon as it is inserted. For the same reason there is no {@link #permanentFile}, so images are
+ * not served with sendfile. The cache is emptied on startup.
+ *
+ * Meter: parcel.blobstore.cache{result} (hit, miss).
+ */
+@Service
+@ConditionalOnProperty(name = "file.storage.type", havingValue = "s3")
+@Slf4j
+public class S3BlobStore implements BlobStore {
+
+    private static final String SERVICE = "s3";
+    private static final Pattern SHARD_NAME = Pattern.compile("[0-9a-f]{2}");
+
+    private final HttpClient httpClient;
+    private final URI endpoint;
+    private final String bucket;
+    private final String region;
+    private final String accessKey;
+    private final String secretKey;
+    private final long multipartThreshold;
+    private final int partSize;
+    private final Duration requestTimeout;
+
+    private final Path cacheLocation;
+    private final Path cacheTempLocation;
+    // key -> cached bytes; eviction deletes the cached file
+    private final Cache<String, Long> cached;
+    // One download per key at a time; later callers wait for it
+    private final Map<String, CompletableFuture<Void>> downloads = new ConcurrentHashMap<>();
+
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    public S3BlobStore(@Value("${file.storage.s3.endpoint}") String endpoint,
+                       @Value("${file.storage.s3.bucket}") String bucket,
+                       @Value("${file.storage.s3.region:us-east-1}") String region,
+                       @Value("${file.storage.s3.access-key}") String accessKey,
+                       @Value("${file.storage.s3.secret-key}") String secretKey,
+                       @Value("${file.storage.s3.multipart-threshold:16777216}") long multipartThreshold,
+                       @Value("${file.storage.s3.part-size:8388608}") int partSize,
+                       @Value("${file.storage.s3.request-timeout-ms:60000}") long requestTimeoutMs,
+                       @Value("${file.storage.s3.cache-dir:${file.upload-dir}/.cache}") String cacheDir,
+                       @Value("${file.storage.s3.cache-max-bytes:1073741824}") long cacheMaxBytes,
+                       MeterRegistry meterRegistry) throws IOException {
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        this.bucket = bucket;
+        this.region = region;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.multipartThreshold = multipartThreshold;
+        // S3 refuses parts under 5 MiB (except the last)
+        this.partSize = Math.max(5 * 1024 * 1024, partSize);
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        this.cacheLocation = Paths.get(cacheDir).toAbsolutePath().normalize();
+        this.cacheTempLocation = cacheLocation.resolve(".tmp");
+        clearCache();
+        Files.createDirectories(cacheTempLocation);
+        this.cached = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((String key, Long size) -> (int) Math.min(Integer.MAX_VALUE, Math.max(1, size)))
+                .evictionListener((String key, Long size, RemovalCause cause) -> deleteCached(key))
+                .build();
+        this.cacheHits = Counter.builder("parcel.blobstore.cache").tag("result", "hit").register(meterRegistry);
+        this.cacheMisses = Counter.builder("parcel.blobstore.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    @Override
+    public void put(String key, InputStream content, long size, String contentType) throws IOException {
+        String objectKey = objectKey(key);
+        if (size >= multipartThreshold) {
+            putMultipart(objectKey, content, contentType);
+            return;
+        }
+        BodyPublisher body = BodyPublishers.fromPublisher(BodyPublishers.ofInputStream(() -> content), size);
+        send("PUT", objectKey, new TreeMap<>(), Map.of("content-type", contentType), body,
+                BodyHandlers.ofString()).expectSuccess();
+        log.debug("Put {} ({} bytes)", objectKey, size);
+    }
+
+    private void putMultipart(String objectKey, InputStream content, String contentType) throws IOException {
+        TreeMap<String, String> initiate = new TreeMap<>(Map.of("uploads", ""));
+        String uploadId = text(send("POST", objectKey, initiate, Map.of("content-type", contentType),
+                BodyPublishers.noBody(), BodyHandlers.ofString()).expectSuccess().body(), "UploadId").get(0);
+        try {
+            List<String> etags = new ArrayList<>();
+            byte[] part;
+            while ((part = content.readNBytes(partSize)).length > 0 || etags.isEmpty()) {
+                TreeMap<String, String> query = new TreeMap<>(Map.of(
+                        "partNumber", String.valueOf(etags.size() + 1),
+                        "uploadId", uploadId));
+                String etag = send("PUT", objectKey, query, Map.of(), BodyPublishers.ofByteArray(part),
+                        BodyHandlers.ofString()).expectSuccess().response.headers().firstValue("ETag")
+                        .orElseThrow(() -> new IOException("No ETag for part of " + objectKey));
+                etags.add(etag);
+                if (part.length < partSize) {
+                    break;
+                }
+            }
+            StringBuilder complete = new StringBuilder("<CompleteMultipartUpload>");
+            for (int i = 0; i < etags.size(); i++) {
+                complete.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                        .append(etags.get(i).replace("&", "&amp;").replace("\"", "&quot;"))
+                        .append("</ETag></Part>");
+            }
+            complete.append("</CompleteMultipartUpload>");
+            Reply<String> completed = send("POST", objectKey, new TreeMap<>(Map.of("uploadId", uploadId)),
+                    Map.of("content-type", "application/xml"),
+                    BodyPublishers.ofString(complete.toString()), BodyHandlers.ofString()).expectSuccess();
+            // S3 can report a failed completion inside a 200 response
+            if (completed.body().contains("<Error>")) {
+                throw new IOException("Completing upload of " + objectKey + " failed: " + completed.body());
+            }
+            log.debug("Put {} in {} parts", objectKey, etags.size());
+        } catch (IOException | RuntimeException e) {
+            abort(objectKey, uploadId);
+            throw e;
+        }
+    }
+
+    private void abort(String objectKey, String uploadId) {
+        try {
+            send("DELETE", objectKey, new TreeMap<>(Map.of("uploadId", uploadId)), Map.of(),
+                    BodyPublishers.noBody(), BodyHandlers.discarding());
+        } catch (IOException e) {
+            // The bucket's lifecycle rule for incomplete uploads cleans up
+            log.warn("Could not abort upload {} of {}: {}", uploadId, objectKey, e.getMessage());
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        FileChannel cachedCopy = openCached(key);
+        return cachedCopy != null ? Channels.newInputStream(cachedCopy) : openObject(key);
+    }
+
+    @Override
+    public FileChannel openLocal(String key) throws IOException {
+        FileChannel channel = openCached(key);
+        if (channel != null) {
+            cacheHits.increment();
+            return channel;
+        }
+        cacheMisses.increment();
+        CompletableFuture<Void> download = new CompletableFuture<>();
+        CompletableFuture<Void> running = downloads.putIfAbsent(key, download);
+        if (running != null) {
+            await(running);
+            channel = openCached(key);
+            // Evicted again before it could be opened (a cache far too small for its traffic)
+            return channel != null ? channel : fetch(key, false);
+        }
+        try {
+            channel = fetch(key, true);
+            download.complete(null);
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            downloads.remove(key, download);
+        }
+    }
+
+    // Downloads to a temp file and opens it before the cache can see it, so an immediate eviction
+    // cannot pull the file from under the caller; a private copy goes when its channel closes
+    private FileChannel fetch(String key, boolean cache) throws IOException {
+        Path temp = Files.createTempFile(cacheTempLocation, "get-", ".part");
+        FileChannel channel = null;
+        try {
+            long size;
+            try (InputStream in = openObject(key)) {
+                size = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (!cache) {
+                channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+                return channel;
+            }
+            channel = FileChannel.open(temp, StandardOpenOption.READ);
+            Path target = cachePath(key);
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            cached.put(key, size);
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            throw e;
+        } finally {
+            if (channel == null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        // Always the bucket: another instance may have deleted an object this one still has cached
+        Reply<Void> head = send("HEAD", objectKey(key), new TreeMap<>(), Map.of(), BodyPublishers.noBody(),
+                BodyHandlers.discarding());
+        if (head.status() == 404) {
+            cached.invalidate(key);
+            deleteCached(key);
+            return false;
+        }
+        head.expectSuccess();
+        return true;
+    }
+
+    @Override
+    public long deleteAll(String keyPrefix) throws IOException {
+        if (keyPrefix.length() < SHARD_WIDTH) {
+            throw new IllegalArgumentException("Key prefix too short: " + keyPrefix);
+        }
+        long freed = 0;
+        for (Document page : listPages(objectKey(keyPrefix), null)) {
+            NodeList contents = page.getElementsByTagNameNS("*", "Contents");
+            for (int i = 0; i < contents.getLength(); i++) {
+                Element object = (Element) contents.item(i);
+                String objectKey = child(object, "Key");
+                delete(objectKey.substring(objectKey.lastIndexOf('/') + 1));
+                freed += Long.parseLong(child(object, "Size"));
+            }
+        }
+        return freed;
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        // S3 answers 204 whether or not the object existed
+        send("DELETE", objectKey(key), new TreeMap<>(), Map.of(), BodyPublishers.noBody(),
+                BodyHandlers.discarding()).expectSuccess();
+        cached.invalidate(key);
+        deleteCached(key);
+    }
+
+    @Override
+    public List<String> shards(String parent) throws IOException {
+        String prefix = parent.isEmpty() ? "" : parent + "/";
+        List<String> names = new ArrayList<>();
+        for (Document page : listPages(prefix, "/")) {
+            NodeList common = page.getElementsByTagNameNS("*", "CommonPrefixes");
+            for (int i = 0; i < common.getLength(); i++) {
+                String shard = child((Element) common.item(i), "Prefix");
+                String name = shard.substring(prefix.length(), shard.length() - 1);
+                if (SHARD_NAME.matcher(name).matches()) {
+                    names.add(name);
+                }
+            }
+        }
+        names.sort(null);
+        return names;
+    }
+
+    @Override
+    public List<StoredObject> list(String shard) throws IOException {
+        String prefix = shard + "/";
+        List<StoredObject> objects = new ArrayList<>();
+        for (Document page : listPages(prefix, "/")) {
+            NodeList contents = page.getElementsByTagNameNS("*", "Contents");
+            for (int i = 0; i < contents.getLength(); i++) {
+                Element object = (Element) contents.item(i);
+                objects.add(new StoredObject(child(object, "Key").substring(prefix.length()),
+                        Long.parseLong(child(object, "Size")), Instant.parse(child(object, "LastModified"))));
+            }
+        }
+        return objects;
+    }
+
+    // Every ListObjectsV2 page under a prefix; with a delimiter, deeper keys come back as CommonPrefixes
+    private List<Document> listPages(String prefix, String delimiter) throws IOException {
+        List<Document> pages = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            TreeMap<String, String> query = new TreeMap<>(Map.of("list-type", "2", "prefix", prefix));
+            if (delimiter != null) {
+                query.put("delimiter", delimiter);
+            }
+            if (continuationToken != null) {
+                query.put("continuation-token", continuationToken);
+            }
+            Document page = parse(send("GET", "", query, Map.of(), BodyPublishers.noBody(),
+                    BodyHandlers.ofString()).expectSuccess().body());
+            pages.add(page);
+            NodeList truncated = page.getElementsByTagNameNS("*", "IsTruncated");
+            continuationToken = truncated.getLength() > 0 && "true".equals(truncated.item(0).getTextContent())
+                    ? child(page.getDocumentElement(), "NextContinuationToken")
+                    : null;
+        } while (continuationToken != null);
+        return pages;
+    }
+
+    // The cached copy opened, or null when it is not (or no longer) cached
+    private FileChannel openCached(String key) throws IOException {
+        if (cached.getIfPresent(key) == null) {
+            return null;
+        }
+        try {
+            return FileChannel.open(cachePath(key), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // Evicted between the lookup and the open
+            return null;
+        }
+    }
+
+    private InputStream openObject(String key) throws IOException {
+        String objectKey = objectKey(key);
+        Reply<InputStream> reply = send("GET", objectKey, new TreeMap<>(), Map.of(), BodyPublishers.noBody(),
+                BodyHandlers.ofInputStream());
+        if (reply.status() == 404) {
+            reply.body().close();
+            throw new FileNotFoundException("File not found " + key);
+        }
+        if (reply.status() / 100 != 2) {
+            String error;
+            try (InputStream body = reply.body()) {
+                error = new String(body.readNBytes(512), StandardCharsets.UTF_8);
+            }
+            throw new IOException("GET " + objectKey + " failed with " + reply.status() + ": " + error);
+        }
+        return reply.body();
+    }
+
+    private <T> Reply<T> send(String method, String objectKey, TreeMap<String, String> query,
+                              Map<String, String> headers, BodyPublisher body, BodyHandler<T> handler)
+            throws IOException {
+        String path = "/" + bucket + (objectKey.isEmpty() ? "" : "/" + objectKey);
+        String canonicalUri = AwsSigV4Signer.encode(endpoint.getRawPath() + path, true);
+        String canonicalQuery = AwsSigV4Signer.canonicalQuery(query);
+        Instant now = Instant.now();
+
+        TreeMap<String, String> signed = new TreeMap<>(headers);
+        signed.put("host", endpoint.getPort() == -1 ? endpoint.getHost() : endpoint.getHost() + ":" + endpoint.getPort());
+        signed.put("x-amz-content-sha256", AwsSigV4Signer.UNSIGNED_PAYLOAD);
+        signed.put("x-amz-date", AwsSigV4Signer.AMZ_DATE.format(now));
+        String authorization = AwsSigV4Signer.authorization(method, canonicalUri, canonicalQuery, signed,
+                AwsSigV4Signer.UNSIGNED_PAYLOAD, now, region, SERVICE, accessKey, secretKey);
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(endpoint.getScheme() + "://"
+                        + endpoint.getRawAuthority() + canonicalUri + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery)))
+                .timeout(requestTimeout)
+                .method(method, body)
+                .header("Authorization", authorization);
+        // HttpClient sets Host itself, from the same URI
+        signed.forEach((name, value) -> {
+            if (!name.equals("host")) {
+                request.header(name, value);
+            }
+        });
+        try {
+            return new Reply<>(method + " " + path, httpClient.send(request.build(), handler));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(method + " " + path + " interrupted");
+        }
+    }
+
+    // Shard layout shared with the local store; names are plain file names like the local store's
+    private static String objectKey(String key) throws FileNotFoundException {
+        if (key.isEmpty() || key.startsWith(".") || key.indexOf('/') >= 0 || key.indexOf('\\') >= 0) {
+            throw new FileNotFoundException("File not found " + key);
+        }
+        return BlobStore.shardedKey(key);
+    }
+
+    private Path cachePath(String key) throws FileNotFoundException {
+        return cacheLocation.resolve(objectKey(key));
+    }
+
+    private void deleteCached(String key) {
+        try {
+            Files.deleteIfExists(cachePath(key));
+        } catch (IOException e) {
+            log.debug("Could not delete cached {}: {}", key, e.getMessage());
+        }
+    }
+
+    // Cached files from a previous run are not tracked by the size bound, so start empty
+    private void clearCache() throws IOException {
+        if (!Files.isDirectory(cacheLocation)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(cacheLocation)) {
+            files.sorted(Comparator.reverseOrder())
+                    .filter(path -> !path.equals(cacheLocation))
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static void await(CompletableFuture<Void> download) throws IOException {
+        try {
+            download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a download");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static Document parse(String xml) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IOException("Unreadable S3 response", e);
+        }
+    }
+
+    private static List<String> text(String xml, String tag) throws IOException {
+        NodeList nodes = parse(xml).getElementsByTagNameNS("*", tag);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            values.add(nodes.item(i).getTextContent());
+        }
+        if (values.isEmpty()) {
+            throw new IOException("No " + tag + " in S3 response");
+        }
+        return values;
+    }
+
+    private static String child(Element element, String tag) {
+        return element.getElementsByTagNameNS("*", tag).item(0).getTextContent();
+    }
+
+    private record Reply<T>(String request, HttpResponse<T> response) {
+
+        int status() {
+            return response.statusCode();
+        }
+
+        T body() {
+            return response.body();
+        }
+
+        Reply<T> expectSuccess() throws IOException {
+            if (status() / 100 != 2) {
+                Object body = response.body();
+                throw new IOException(request + " failed with " + status()
+                        + (body instanceof String text && !text.isEmpty() ? ": " + text : ""));
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.pms.parcelServiceImple;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.pms.service.TrackingNumberGenerator;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Time-ordered tracking numbers in the Snowflake layout:
+ * 41 bits of milliseconds since 2024-01-01, 10 bits of node id and a 12 bit sequence.
+ * The 63-bit value is written as 13 Crockford base32 characters (fixed width, so string
+ * order equals numeric order and inserts land at the right edge of the index), followed
+ * by a Luhn mod 32 check character, e.g. PM01HV3K2Q8D4ZX7.
+ *
+ * Generation is lock-free: timestamp and sequence share one AtomicLong updated by CAS.
+ * When a millisecond's 4096 sequence values run out the counter carries into the next
+ * millisecond, so values stay unique and monotonic even if the wall clock steps back.
+ */
+@Service
+@Slf4j
+public class SnowflakeTrackingNumberGenerator implements TrackingNumberGenerator {
+
+    static final String PREFIX = "PM";
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int[] DECODE = new int[128];
+    private static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int BODY_LENGTH = 13;
+    private static final int LENGTH = PREFIX.length() + BODY_LENGTH + 1;
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = i;
+            DECODE[Character.toLowerCase(ALPHABET[i])] = i;
+        }
+    }
+
+    private final long nodeId;
+    // (milliseconds since EPOCH_MILLIS << SEQUENCE_BITS) | sequence
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeTrackingNumberGenerator(@Value("${parcel.tracking.node-id:-1}") int nodeId) {
+        this.nodeId = nodeId >= 0 ? nodeId & ((1 << NODE_BITS) - 1) : deriveNodeId();
+        log.info("Tracking number generator using node id {}", this.nodeId);
+    }
+
+    @Override
+    public String next() {
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        long previous;
+        long next;
+        do {
+            previous = state.get();
+            next = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+        } while (!state.compareAndSet(previous, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return encode((timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence);
+    }
+
+    @Override
+    public boolean isValid(String trackingNumber) {
+        if (trackingNumber == null || trackingNumber.length() != LENGTH || !trackingNumber.startsWith(PREFIX)) {
+            return false;
+        }
+        char[] chars = trackingNumber.toCharArray();
+        for (int i = PREFIX.length(); i < LENGTH; i++) {
+            if (chars[i] >= 128 || DECODE[chars[i]] < 0) {
+                return false;
+            }
+        }
+        return DECODE[chars[LENGTH - 1]] == checkValue(chars, PREFIX.length(), PREFIX.length() + BODY_LENGTH);
+    }
+
+    /**
+     * Recovers the numeric id (and so the creation time and node) from a valid tracking number.
+     */
+    public long decode(String trackingNumber) {
+        if (!isValid(trackingNumber)) {
+            throw new IllegalArgumentException("Invalid tracking number: " + trackingNumber);
+        }
+        long value = 0;
+        for (int i = PREFIX.length(); i < PREFIX.length() + BODY_LENGTH; i++) {
+            value = (value << 5) | DECODE[trackingNumber.charAt(i)];
+        }
+        return value;
+    }
+
+    @Override
+    public Instant issuedAt(String trackingNumber) {
+        if (!isValid(trackingNumber)) {
+            return null;
+        }
+        return Instant.ofEpochMilli(EPOCH_MILLIS + (decode(trackingNumber) >>> (NODE_BITS + SEQUENCE_BITS)));
+    }
+
+    private static String encode(long value) {
+        char[] out = new char[LENGTH];
+        out[0] = 'P';
+        out[1] = 'M';
+        for (int i = PREFIX.length() + BODY_LENGTH - 1; i >= PREFIX.length(); i--) {
+            out[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        out[LENGTH - 1] = ALPHABET[checkValue(out, PREFIX.length(), PREFIX.length() + BODY_LENGTH)];
+        return new String(out);
+    }
+
+    // Luhn mod N check (N = 32), computed right to left over the body characters
+    private static int checkValue(char[] chars, int from, int to) {
+        int factor = 2;
+        int sum = 0;
+        for (int i = to - 1; i >= from; i--) {
+            int addend = factor * DECODE[chars[i]];
+            factor = factor == 2 ? 1 : 2;
+            sum += addend / 32 + addend % 32;
+        }
+        return (32 - sum % 32) % 32;
+    }
+
+    private static long deriveNodeId() {
+        try {
+            return InetAddress.getLocalHost().getHostName().hashCode() & ((1 << NODE_BITS) - 1);
+        } catch (Exception e) {
+            return ThreadLocalRandom.current().nextInt(1 << NODE_BITS);
+        }
+    }
+}
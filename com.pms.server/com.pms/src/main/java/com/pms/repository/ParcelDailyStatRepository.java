@@ -0,0 +1,61 @@
+package com.pms.repository;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.pms.entity.ParcelDailyStat;
+
+@Repository
+public interface ParcelDailyStatRepository extends JpaRepository<ParcelDailyStat, Long> {
+
+    String INSERT_COLUMNS = "INSERT INTO parcel_daily_stats (stat_date, status, payment_method, parcel_type, "
+            + "destination_city, parcel_count, total_value, shipping_cost, shipping_cost_count) ";
+
+    // :sign is +1 to add parcels to their buckets and -1 to take them out
+    String SELECT_DELTA = "SELECT DATE(p.received_at), COALESCE(p.status, ''), "
+            + "LEFT(COALESCE(p.payment_method, ''), 64), LEFT(COALESCE(p.parcel_type, ''), 64), "
+            + "LEFT(COALESCE(p.destination_city, ''), 128), "
+            + ":sign * COUNT(*), :sign * COALESCE(SUM(p.total_value), 0), "
+            + ":sign * COALESCE(SUM(p.shipping_cost), 0), :sign * COUNT(p.shipping_cost) "
+            + "FROM parcels p ";
+
+    String GROUP_AND_MERGE = " AND p.received_at IS NOT NULL GROUP BY 1, 2, 3, 4, 5 "
+            + "ON DUPLICATE KEY UPDATE parcel_count = parcel_count + VALUES(parcel_count), "
+            + "total_value = total_value + VALUES(total_value), "
+            + "shipping_cost = shipping_cost + VALUES(shipping_cost), "
+            + "shipping_cost_count = shipping_cost_count + VALUES(shipping_cost_count)";
+
+    @Modifying
+    @Query(value = INSERT_COLUMNS + SELECT_DELTA + "WHERE p.id IN (:ids)" + GROUP_AND_MERGE, nativeQuery = true)
+    int applyByIds(@Param("ids") Collection<Long> ids, @Param("sign") int sign);
+
+    // The status filter matches the bulk UPDATE's WHERE clause; INSERT ... SELECT also locks the rows read
+    @Modifying
+    @Query(value = INSERT_COLUMNS + SELECT_DELTA + "WHERE p.id IN (:ids) AND p.status IN (:statuses)"
+            + GROUP_AND_MERGE, nativeQuery = true)
+    int applyByIdsAndStatuses(@Param("ids") Collection<Long> ids,
+                              @Param("statuses") Collection<String> statuses,
+                              @Param("sign") int sign);
+
+    @Modifying
+    @Query(value = INSERT_COLUMNS + SELECT_DELTA + "WHERE p.tracking_number IN (:trackingNumbers)"
+            + GROUP_AND_MERGE, nativeQuery = true)
+    int applyByTrackingNumbers(@Param("trackingNumbers") Collection<String> trackingNumbers, @Param("sign") int sign);
+
+    @Modifying
+    @Query(value = "DELETE FROM parcel_daily_stats", nativeQuery = true)
+    int deleteAllStats();
+
+    @Modifying
+    @Query(value = INSERT_COLUMNS + "SELECT DATE(p.received_at), COALESCE(p.status, ''), "
+            + "LEFT(COALESCE(p.payment_method, ''), 64), LEFT(COALESCE(p.parcel_type, ''), 64), "
+            + "LEFT(COALESCE(p.destination_city, ''), 128), COUNT(*), COALESCE(SUM(p.total_value), 0), "
+            + "COALESCE(SUM(p.shipping_cost), 0), COUNT(p.shipping_cost) "
+            + "FROM parcels p WHERE p.received_at IS NOT NULL GROUP BY 1, 2, 3, 4, 5", nativeQuery = true)
+    int rebuildAllStats();
+}
@@ -1,15 +1,26 @@
 package com.pms.repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.pms.entity.Parcel;
 
+import jakarta.persistence.QueryHint;
+
 
 @Repository
 public interface ParcelRepository extends JpaRepository<Parcel, Long>,JpaSpecificationExecutor<Parcel>  {
@@ -17,4 +28,84 @@ public interface ParcelRepository extends JpaRepository<Parcel, Long>,JpaSpecifi
     Page<Parcel> findAll(Pageable pageable);
     // Example of filtered pagination
     Page<Parcel> findByStatus(String status, Pageable pageable);
+
+    // Which of the given tracking numbers are already taken (one round trip per bulk chunk)
+    @Query("SELECT p.trackingNumber FROM Parcel p WHERE p.trackingNumber IN :trackingNumbers")
+    List<String> findExistingTrackingNumbers(@Param("trackingNumbers") Collection<String> trackingNumbers);
+
+    /*----------------------------------Bulk status transition Start -------------------------------------------------------*/
+    @Query("SELECT p.id, p.trackingNumber, p.status FROM Parcel p WHERE p.id IN :ids")
+    List<Object[]> findStatusByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.id, p.trackingNumber, p.status FROM Parcel p WHERE p.trackingNumber IN :trackingNumbers")
+    List<Object[]> findStatusByTrackingNumbers(@Param("trackingNumbers") Collection<String> trackingNumbers);
+
+    // Source states are re-checked in the WHERE clause so a concurrent change cannot be overwritten.
+    // Bulk updates skip entity callbacks, so version and lastModifiedAt are maintained here.
+    @Modifying
+    @Query("UPDATE Parcel p SET p.status = :target, p.version = p.version + 1, p.lastModifiedAt = :now " +
+           "WHERE p.id IN :ids AND p.status IN :sources")
+    int updateStatus(@Param("ids") Collection<Long> ids,
+                     @Param("sources") Collection<Parcel.ParcelStatus> sources,
+                     @Param("target") Parcel.ParcelStatus target,
+                     @Param("now") Instant now);
+
+    @Modifying
+    @Query("UPDATE Parcel p SET p.status = :target, p.deliveredAt = :now, " +
+           "p.version = p.version + 1, p.lastModifiedAt = :now " +
+           "WHERE p.id IN :ids AND p.status IN :sources")
+    int updateStatusDelivered(@Param("ids") Collection<Long> ids,
+                              @Param("sources") Collection<Parcel.ParcelStatus> sources,
+                              @Param("target") Parcel.ParcelStatus target,
+                              @Param("now") Instant now);
+    /*----------------------------------Bulk status transition End -------------------------------------------------------*/
+
+    /*----------------------------------Keyset pagination Start -------------------------------------------------------*/
+    // First page of the (receivedAt DESC, id DESC) keyset; no COUNT query is issued for List results
+    @Query("SELECT p FROM Parcel p WHERE p.receivedAt IS NOT NULL " +
+           "ORDER BY p.receivedAt DESC, p.id DESC")
+    List<Parcel> findKeysetFirstPage(Pageable pageable);
+
+    // Seek past the last (receivedAt, id) seen; the leading range keeps the predicate on idx_parcels_received_at_id
+    @Query("SELECT p FROM Parcel p WHERE p.receivedAt <= :receivedAt " +
+           "AND (p.receivedAt < :receivedAt OR p.id < :id) " +
+           "ORDER BY p.receivedAt DESC, p.id DESC")
+    List<Parcel> findKeysetPageAfter(@Param("receivedAt") Instant receivedAt,
+                                     @Param("id") Long id,
+                                     Pageable pageable);
+    /*----------------------------------Keyset pagination End -------------------------------------------------------*/
+
+    // Server-side cursor over the whole table; must be consumed inside a transaction and closed
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p FROM Parcel p ORDER BY p.id")
+    Stream<Parcel> streamAll();
+
+    // Feeds the tracking-number bloom filter
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("SELECT p.trackingNumber FROM Parcel p")
+    Stream<String> streamAllTrackingNumbers();
+
+    // Every referenced image, for the orphaned-upload collector
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("SELECT p.imagePath FROM Parcel p WHERE p.imagePath IS NOT NULL")
+    Stream<String> streamAllImagePaths();
+
+    boolean existsByImagePath(String imagePath);
+
+    // Inputs for the delivery latency histograms: (destinationCity, parcelType, receivedAt, deliveredAt)
+    @Query("SELECT p.destinationCity, p.parcelType, p.receivedAt, p.deliveredAt FROM Parcel p " +
+           "WHERE p.id IN :ids AND p.receivedAt IS NOT NULL AND p.deliveredAt IS NOT NULL")
+    List<Object[]> findDeliveryLatencyInputs(@Param("ids") Collection<Long> ids);
+
+    // Backfills the delivery latency histograms with deliveries made before the given instant
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p.destinationCity, p.parcelType, p.receivedAt, p.deliveredAt FROM Parcel p " +
+           "WHERE p.receivedAt IS NOT NULL AND p.deliveredAt IS NOT NULL AND p.deliveredAt < :cutoff")
+    Stream<Object[]> streamDeliveryLatencyInputs(@Param("cutoff") Instant cutoff);
 }
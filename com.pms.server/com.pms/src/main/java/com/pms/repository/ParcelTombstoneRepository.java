@@ -0,0 +1,33 @@
+package com.pms.repository;
+
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.pms.entity.ParcelTombstone;
+
+import jakarta.persistence.QueryHint;
+
+@Repository
+public interface ParcelTombstoneRepository extends JpaRepository<ParcelTombstone, Long> {
+
+    // Same (since, until] window as the delta row query; must be consumed inside a transaction and closed
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT t FROM ParcelTombstone t WHERE t.deletedAt > :since AND t.deletedAt <= :until " +
+           "ORDER BY t.parcelId")
+    Stream<ParcelTombstone> streamDeleted(@Param("since") Instant since, @Param("until") Instant until);
+
+    @Modifying
+    @Query("DELETE FROM ParcelTombstone t WHERE t.deletedAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") Instant cutoff);
+}
@@ -1,6 +1,7 @@
 package com.pms.repository;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -13,30 +14,31 @@ import com.pms.entity.Parcel;
 @Repository
 public interface ReportRepository extends JpaRepository<Parcel, Long> {
 
+	// Summary metrics read from the parcel_daily_stats rollup: O(days) rows instead of O(parcels)
 	@Query(value = """
 		    SELECT 
-		        COUNT(*) AS totalParcels,
-		        SUM(CASE WHEN status = 'DELIVERED' THEN 1 ELSE 0 END) AS deliveredCount,
-		        SUM(CASE WHEN status = 'IN_TRANSIT' THEN 1 ELSE 0 END) AS inTransitCount,
-		        SUM(CASE WHEN status = 'RETURNED' THEN 1 ELSE 0 END) AS returnedCount,
+		        SUM(parcel_count) AS totalParcels,
+		        SUM(CASE WHEN status = 'DELIVERED' THEN parcel_count ELSE 0 END) AS deliveredCount,
+		        SUM(CASE WHEN status = 'IN_TRANSIT' THEN parcel_count ELSE 0 END) AS inTransitCount,
+		        SUM(CASE WHEN status = 'RETURNED' THEN parcel_count ELSE 0 END) AS returnedCount,
 		        SUM(total_value) AS totalRevenue,
-		        AVG(shipping_cost) AS averageShippingCost,
-		        DATE_FORMAT(received_at, '%Y-%m') AS monthYear,
-		        COUNT(*) AS monthlyCount
-		    FROM parcels
-		    WHERE received_at BETWEEN :startDate AND :endDate
-		    GROUP BY DATE_FORMAT(received_at, '%Y-%m')
+		        COALESCE(SUM(shipping_cost) / NULLIF(SUM(shipping_cost_count), 0), 0) AS averageShippingCost,
+		        DATE_FORMAT(stat_date, '%Y-%m') AS monthYear,
+		        SUM(parcel_count) AS monthlyCount
+		    FROM parcel_daily_stats
+		    WHERE stat_date BETWEEN :startDate AND :endDate
+		    GROUP BY DATE_FORMAT(stat_date, '%Y-%m')
 		""", nativeQuery = true)
 		List<ReportSummaryProjection> getSummaryReportMetrics(
-		    @Param("startDate") Instant startDate,
-		    @Param("endDate") Instant endDate);
+		    @Param("startDate") LocalDate startDate,
+		    @Param("endDate") LocalDate endDate);
 
 	
-	// This query find Payment Method Distribution
-	@Query("SELECT p.paymentMethod, COUNT(p) FROM Parcel p " +
-		       "WHERE p.receivedAt BETWEEN :startDate AND :endDate " +
-		       "GROUP BY p.paymentMethod")
-		List<Object[]> findPaymentMethodCounts(@Param("startDate") Instant start, @Param("endDate") Instant end);
+	// This query find Payment Method Distribution (from the daily rollup)
+	@Query(value = "SELECT NULLIF(payment_method, ''), SUM(parcel_count) FROM parcel_daily_stats " +
+		       "WHERE stat_date BETWEEN :startDate AND :endDate " +
+		       "GROUP BY payment_method", nativeQuery = true)
+		List<Object[]> findPaymentMethodCounts(@Param("startDate") LocalDate start, @Param("endDate") LocalDate end);
 
 		// This query for Status Report
 		@Query("SELECT p.status, COUNT(p) FROM Parcel p GROUP BY p.status")
@@ -45,15 +47,24 @@ public interface ReportRepository extends JpaRepository<Parcel, Long> {
 		@Query("SELECT COUNT(p) FROM Parcel p")
 		long findTotalParcelCount();
 
-		// This query for Delivery performance
-		@Query("SELECT p FROM Parcel p WHERE " +
-			       "MONTH(p.deliveredAt) = :month AND YEAR(p.deliveredAt) = :year " +
-			       "AND (:city IS NULL OR p.destinationCity = :city) " +
-			       "AND (:parcelType IS NULL OR p.parcelType = :parcelType) " +
-			       "AND p.deliveredAt IS NOT NULL")
-			List<Parcel> findDeliveredParcelsForReport(
-			        @Param("month") Integer month,
-			        @Param("year") Integer year,
+		// This query for Delivery performance: per-day counts over a half-open delivered_at range,
+		// so idx_parcels_delivered_at can serve the range instead of evaluating MONTH()/YEAR() per row
+		@Query(value = """
+			    SELECT 
+			        DATE(p.delivered_at) AS deliveryDay,
+			        COUNT(*) AS totalDelivered,
+			        SUM(CASE WHEN p.estimated_delivery_at IS NOT NULL
+			                  AND p.delivered_at <= p.estimated_delivery_at THEN 1 ELSE 0 END) AS onTimeDeliveries
+			    FROM parcels p
+			    WHERE p.delivered_at >= :from AND p.delivered_at < :to
+			      AND (:city IS NULL OR p.destination_city = :city)
+			      AND (:parcelType IS NULL OR p.parcel_type = :parcelType)
+			    GROUP BY DATE(p.delivered_at)
+			    ORDER BY deliveryDay
+			""", nativeQuery = true)
+			List<Object[]> findDailyDeliveryCounts(
+			        @Param("from") Instant from,
+			        @Param("to") Instant to,
 			        @Param("city") String city,
 			        @Param("parcelType") String parcelType);
 
@@ -0,0 +1,49 @@
+package com.pms.repository;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.pms.entity.StoredBlob;
+
+@Repository
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+
+    // First reference creates the row, later ones only count; the row stays locked until commit
+    @Modifying
+    @Query(value = "INSERT INTO stored_blobs (hash, size_bytes, content_type, ref_count, created_at) "
+            + "VALUES (:hash, :sizeBytes, :contentType, 1, :now) "
+            + "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1", nativeQuery = true)
+    int addReference(@Param("hash") String hash,
+                     @Param("sizeBytes") long sizeBytes,
+                     @Param("contentType") String contentType,
+                     @Param("now") Instant now);
+
+    // Takes the row lock without adding a reference, creating the row unreferenced if it is missing
+    @Modifying
+    @Query(value = "INSERT INTO stored_blobs (hash, size_bytes, content_type, ref_count, created_at) "
+            + "VALUES (:hash, :sizeBytes, :contentType, 0, :now) "
+            + "ON DUPLICATE KEY UPDATE ref_count = ref_count", nativeQuery = true)
+    int lockUnreferenced(@Param("hash") String hash,
+                         @Param("sizeBytes") long sizeBytes,
+                         @Param("contentType") String contentType,
+                         @Param("now") Instant now);
+
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.refCount = b.refCount - 1 WHERE b.hash = :hash AND b.refCount > 0")
+    int removeReference(@Param("hash") String hash);
+
+    // For the orphan collector, which has checked under the row lock that no parcel uses the blob
+    @Modifying
+    @Query("DELETE FROM StoredBlob b WHERE b.hash = :hash")
+    int deleteByHash(@Param("hash") String hash);
+
+    // Succeeds only while nothing references the blob; a concurrent addReference waits on the row lock
+    @Modifying
+    @Query("DELETE FROM StoredBlob b WHERE b.hash = :hash AND b.refCount = 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+}
@@ -49,11 +49,14 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.POST, "/api/parcels").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.POST, "/api/parcels/*").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.PUT, "/api/parcels/*/update").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.PUT, "/api/parcels/status/bulk").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.DELETE, "/api/parcels/*").hasRole("ADMIN")
                 //.requestMatchers(HttpMethod.GET, "/api/parcels/*").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.GET, "/api/parcels/image/**").hasRole("ADMIN")
                 
                 .requestMatchers(HttpMethod.GET, "/api/reports/*").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.POST, "/api/reports/**").hasRole("ADMIN")
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
 
                 // Shared read endpoints
                 .requestMatchers(HttpMethod.GET, "/api/parcels").hasAnyRole("ADMIN", "USER")
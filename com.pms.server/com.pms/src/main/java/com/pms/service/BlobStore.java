@@ -0,0 +1,144 @@
+package com.pms.service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Where stored upload bytes live. Keys are plain file names (a content hash, a derivative such as
+ * {@code <hash>.thumb}, or an old {@code UUID_name}); how they are laid out is up to the driver.
+ * Objects are written once and never modified, only deleted.
+ *
+ * Selected with {@code file.storage.type}: {@code local} (default) or {@code s3}.
+ *
+ * Objects leave through reference-counted purges in {@link FileStorageService}; whatever those
+ * miss (a crash between a publish and its commit, images from before reference counting) is
+ * found by {@link UploadGarbageCollector}, which walks the store a leaf shard at a time through
+ * {@link #shards} and {@link #list}, for either driver.
+ */
+public interface BlobStore {
+
+    /**
+     * Stores {@code size} bytes read from {@code content} under {@code key}, replacing any object
+     * already there. Readers never see a partly written object.
+     */
+    void put(String key, InputStream content, long size, String contentType) throws IOException;
+
+    /**
+     * Stores the content of a local file; the file itself is left in place.
+     */
+    default void put(String key, Path source, String contentType) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            put(key, in, Files.size(source), contentType);
+        }
+    }
+
+    /**
+     * Streams an object.
+     *
+     * @throws FileNotFoundException when there is no such object
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * Opens a file on this node holding the object's bytes, for zero-copy serving and decoding:
+     * the object itself for a local store, a cached copy for a remote one. The channel stays
+     * readable until closed even if the store drops a cached copy meanwhile; the caller closes it.
+     *
+     * @throws FileNotFoundException when there is no such object
+     */
+    FileChannel openLocal(String key) throws IOException;
+
+    /**
+     * The object's own file, when the store keeps it on this node until {@link #deleteAll}, so it
+     * can be handed to something that opens it later (Tomcat's sendfile). Null for a store that
+     * only holds evictable copies; use {@link #openLocal} then.
+     *
+     * Nothing holds the file for that later open: a purge or the collector deleting it in between
+     * fails the open after the response headers (Content-Length included) are out, and the client
+     * sees a truncated body. Callers re-check just before handing the path over and otherwise read
+     * from a channel, which leaves the window between that check and the open. Only unreferenced
+     * objects are deleted (and by the collector only after its grace period), so a request in that
+     * window was already for an image no parcel shows.
+     *
+     * @throws FileNotFoundException when there is no such object
+     */
+    default Path permanentFile(String key) throws IOException {
+        return null;
+    }
+
+    /**
+     * Whether the store holds the object, asked of the store itself: uploads skip the put on a
+     * yes, so a cached copy of an object another instance deleted must not count.
+     */
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Deletes every object whose key starts with {@code keyPrefix}, which must be at least
+     * {@link #SHARD_WIDTH} characters (a blob hash removes the blob and its derivatives).
+     *
+     * @return bytes freed
+     */
+    long deleteAll(String keyPrefix) throws IOException;
+
+    /**
+     * Deletes one object; nothing happens when there is none.
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Names of the shards under {@code parent} ({@code ""} for the first level, {@code "ab"} for
+     * the second), two hex characters each, in order. Empty shards may be left out.
+     */
+    List<String> shards(String parent) throws IOException;
+
+    /**
+     * Objects in one leaf shard ({@code "ab/cd"}), in no particular order.
+     */
+    List<StoredObject> list(String shard) throws IOException;
+
+    /**
+     * An object as listed: its key, size in bytes and when it was written.
+     */
+    record StoredObject(String key, long size, Instant lastModified) {
+    }
+
+    // Hex characters of a key that pick its shard, two levels of two
+    int SHARD_WIDTH = 4;
+
+    Pattern SHARD_PREFIX = Pattern.compile("[0-9a-f]{" + SHARD_WIDTH + "}");
+
+    /**
+     * {@code ab/cd/<key>}: hashes and old UUID_name keys start with random hex, so the first four
+     * characters spread keys evenly; any other key is placed by a hash of itself.
+     */
+    static String shardedKey(String key) {
+        String prefix = shardPrefix(key);
+        return prefix.substring(0, 2) + "/" + prefix.substring(2, SHARD_WIDTH) + "/" + key;
+    }
+
+    // Hashes and old UUID_name files start with four random hex characters; anything else is hashed
+    static String shardPrefix(String key) {
+        String lower = key.length() >= SHARD_WIDTH ? key.substring(0, SHARD_WIDTH).toLowerCase(Locale.ROOT) : "";
+        if (SHARD_PREFIX.matcher(lower).matches()) {
+            return lower;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest).substring(0, SHARD_WIDTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.pms.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pms.dto.DeliveryLatencyDTO;
+import com.pms.repository.ParcelRepository;
+import com.pms.util.LatencyHistogram;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory delivery latency (deliveredAt - receivedAt, in seconds) histograms per destination
+ * city and parcel type, so percentile reports never sort rows.
+ *
+ * Live deliveries are recorded after their transaction commits. History is loaded once at
+ * startup, limited to deliveries before the moment this bean was created; everything from
+ * then on arrives through {@link #recordAfterCommit}, so nothing is counted twice. Later edits
+ * or deletes of delivered parcels are not subtracted; restart to re-derive from the table.
+ * Each node only sees its own live deliveries on top of the shared backfill.
+ */
+@Service
+@Slf4j
+public class DeliveryLatencyTracker {
+
+    private static final String UNKNOWN = "UNKNOWN";
+    private static final String OTHER = "OTHER";
+
+    private final ParcelRepository parcelRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int maxSeries;
+    private final Instant backfillCutoff = Instant.now();
+    private final Map<SeriesKey, LatencyHistogram> series = new ConcurrentHashMap<>();
+
+    public DeliveryLatencyTracker(ParcelRepository parcelRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${parcel.latency.max-series:10000}") int maxSeries) {
+        this.parcelRepository = parcelRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxSeries = maxSeries;
+    }
+
+    /**
+     * Records a delivery once the surrounding transaction (if any) commits.
+     */
+    public void recordAfterCommit(String destinationCity, String parcelType, Instant receivedAt, Instant deliveredAt) {
+        if (receivedAt == null || deliveredAt == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(destinationCity, parcelType, receivedAt, deliveredAt);
+                }
+            });
+        } else {
+            record(destinationCity, parcelType, receivedAt, deliveredAt);
+        }
+    }
+
+    /**
+     * @param rows (destinationCity, parcelType, receivedAt, deliveredAt) tuples
+     */
+    public void recordAllAfterCommit(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            recordAfterCommit((String) row[0], (String) row[1], (Instant) row[2], (Instant) row[3]);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long started = System.currentTimeMillis();
+        AtomicLong loaded = new AtomicLong();
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> rows = parcelRepository.streamDeliveryLatencyInputs(backfillCutoff)) {
+                    rows.forEach(row -> {
+                        record((String) row[0], (String) row[1], (Instant) row[2], (Instant) row[3]);
+                        loaded.incrementAndGet();
+                    });
+                }
+            });
+            log.info("Delivery latency histograms backfilled: {} deliveries, {} series in {} ms",
+                    loaded.get(), series.size(), System.currentTimeMillis() - started);
+        } catch (RuntimeException e) {
+            log.error("Delivery latency backfill failed after {} deliveries: {}", loaded.get(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param destinationCity optional filter
+     * @param parcelType optional filter
+     */
+    public List<DeliveryLatencyDTO> snapshot(String destinationCity, String parcelType) {
+        List<DeliveryLatencyDTO> result = new ArrayList<>();
+        series.forEach((key, histogram) -> {
+            if ((destinationCity == null || key.destinationCity().equalsIgnoreCase(destinationCity))
+                    && (parcelType == null || key.parcelType().equalsIgnoreCase(parcelType))) {
+                result.add(DeliveryLatencyDTO.builder()
+                        .destinationCity(key.destinationCity())
+                        .parcelType(key.parcelType())
+                        .count(histogram.getTotalCount())
+                        .p50Seconds(histogram.getValueAtPercentile(50))
+                        .p90Seconds(histogram.getValueAtPercentile(90))
+                        .p99Seconds(histogram.getValueAtPercentile(99))
+                        .maxSeconds(histogram.getMax())
+                        .meanSeconds(Math.round(histogram.getMean() * 100.0) / 100.0)
+                        .build());
+            }
+        });
+        result.sort(Comparator.comparing(DeliveryLatencyDTO::getDestinationCity)
+                .thenComparing(DeliveryLatencyDTO::getParcelType));
+        return result;
+    }
+
+    private void record(String destinationCity, String parcelType, Instant receivedAt, Instant deliveredAt) {
+        long seconds = Duration.between(receivedAt, deliveredAt).getSeconds();
+        histogramFor(destinationCity, parcelType).record(seconds);
+    }
+
+    private LatencyHistogram histogramFor(String destinationCity, String parcelType) {
+        SeriesKey key = new SeriesKey(normalize(destinationCity), normalize(parcelType));
+        LatencyHistogram histogram = series.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        // Free-text cities could grow the map without bound; fold the overflow into one series
+        if (series.size() >= maxSeries) {
+            key = new SeriesKey(OTHER, OTHER);
+        }
+        return series.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+
+    private static String normalize(String value) {
+        return value == null || value.isBlank() ? UNKNOWN : value.trim();
+    }
+
+    private record SeriesKey(String destinationCity, String parcelType) {
+    }
+}
@@ -0,0 +1,313 @@
+package com.pms.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import com.pms.exception.ExportThrottledException;
+import com.pms.exception.GlobalExceptionHandler.ExportException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Admission control that keeps exports from starving the CRUD and tracking endpoints.
+ *
+ * Every export, streamed or background job, holds a permit while it reads the database. A permit
+ * counts against three limits: concurrent exports, database connections (a slice of the pool
+ * reserved for exports; a parallel CSV export takes one per slice thread) and running exports per
+ * user. Exports that cannot start wait in a per-user FIFO, and users are served round-robin so
+ * one user queuing several exports does not hold everyone else back. Waiting is bounded by the
+ * global queue capacity, the per-user queue limit and a timeout; past those the request is
+ * rejected with a Retry-After estimated from recent export durations.
+ *
+ * Meters: parcel.export.in_flight, parcel.export.queued and parcel.export.connections (gauges),
+ * parcel.export.rejected{reason} and parcel.export.bytes{mode} (counters), parcel.export.wait (timer).
+ */
+@Service
+@Slf4j
+public class ExportBulkhead {
+
+    private static final long MAX_RETRY_AFTER_SECONDS = 600;
+
+    private final int maxConcurrent;
+    private final int maxConnections;
+    private final int maxPerUser;
+    private final int maxQueuedPerUser;
+    private final int queueCapacity;
+    private final long queueTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<String, ArrayDeque<Waiter>> queues = new HashMap<>();
+    // Users with waiting exports, in the order they are next served
+    private final ArrayDeque<String> rotation = new ArrayDeque<>();
+    private final Map<String, Integer> runningByUser = new HashMap<>();
+    private volatile int inFlight;
+    private volatile int connectionsInUse;
+    private volatile int queued;
+    // Exponentially weighted mean of how long exports hold a permit, for Retry-After
+    private double meanHoldSeconds = 30;
+
+    private final Timer waitTimer;
+    private final Counter streamedBytes;
+    private final Counter jobBytes;
+    private final Map<String, Counter> rejections = new HashMap<>();
+
+    public ExportBulkhead(@Value("${parcel.export.bulkhead.max-concurrent:4}") int maxConcurrent,
+                          @Value("${parcel.export.bulkhead.max-connections:6}") int maxConnections,
+                          @Value("${parcel.export.bulkhead.max-per-user:1}") int maxPerUser,
+                          @Value("${parcel.export.bulkhead.max-queued-per-user:2}") int maxQueuedPerUser,
+                          @Value("${parcel.export.bulkhead.queue-capacity:16}") int queueCapacity,
+                          @Value("${parcel.export.bulkhead.queue-timeout-ms:30000}") long queueTimeoutMs,
+                          @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                          MeterRegistry meterRegistry) {
+        if (maxConnections >= poolSize) {
+            log.warn("Export connection budget ({}) leaves nothing of the pool ({}) for other requests",
+                    maxConnections, poolSize);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxConnections = maxConnections;
+        this.maxPerUser = maxPerUser;
+        this.maxQueuedPerUser = maxQueuedPerUser;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+
+        Gauge.builder("parcel.export.in_flight", this, bulkhead -> bulkhead.inFlight).register(meterRegistry);
+        Gauge.builder("parcel.export.queued", this, bulkhead -> bulkhead.queued).register(meterRegistry);
+        Gauge.builder("parcel.export.connections", this, bulkhead -> bulkhead.connectionsInUse).register(meterRegistry);
+        this.waitTimer = Timer.builder("parcel.export.wait").register(meterRegistry);
+        this.streamedBytes = Counter.builder("parcel.export.bytes").tag("mode", "stream").register(meterRegistry);
+        this.jobBytes = Counter.builder("parcel.export.bytes").tag("mode", "job").register(meterRegistry);
+        for (String reason : new String[] {"queue_full", "user_queue_full", "timeout"}) {
+            rejections.put(reason, Counter.builder("parcel.export.rejected").tag("reason", reason)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Admits an export made on a request thread, waiting at most the queue timeout.
+     *
+     * @param connections database connections the export holds at once (1 unless rendered in parallel)
+     * @throws ExportThrottledException when the export cannot start in time
+     */
+    public Permit acquire(String user, int connections) {
+        return acquire(user, connections, false);
+    }
+
+    /**
+     * Admits a background export job. Jobs already sit in their own bounded queue, so they wait
+     * without a timeout and are not counted against the request queue limits.
+     */
+    public Permit acquireForJob(String user, int connections) {
+        return acquire(user, connections, true);
+    }
+
+    private Permit acquire(String user, int connections, boolean job) {
+        Waiter waiter = new Waiter(user, Math.max(1, Math.min(connections, maxConnections)));
+        long began = System.nanoTime();
+        lock.lock();
+        try {
+            if (queued == 0 && canStart(waiter)) {
+                start(waiter);
+            } else {
+                if (!job && queued >= queueCapacity) {
+                    throw reject("queue_full", HttpStatus.SERVICE_UNAVAILABLE,
+                            "Export capacity is saturated, try again later");
+                }
+                ArrayDeque<Waiter> queue = queues.get(user);
+                if (!job && (queue == null ? 0 : queue.size()) >= maxQueuedPerUser) {
+                    throw reject("user_queue_full", HttpStatus.TOO_MANY_REQUESTS,
+                            "Too many exports in progress for " + user + ", try again later");
+                }
+                enqueue(waiter);
+                dispatch();
+                await(waiter, job);
+            }
+        } finally {
+            lock.unlock();
+        }
+        waitTimer.record(System.nanoTime() - began, TimeUnit.NANOSECONDS);
+        return new Permit(waiter, job ? jobBytes : streamedBytes);
+    }
+
+    private void await(Waiter waiter, boolean job) {
+        long remaining = queueTimeoutNanos;
+        try {
+            while (!waiter.granted) {
+                if (job) {
+                    changed.await();
+                } else if (remaining > 0) {
+                    remaining = changed.awaitNanos(remaining);
+                } else {
+                    dequeue(waiter);
+                    throw reject("timeout", HttpStatus.SERVICE_UNAVAILABLE,
+                            "Timed out waiting for export capacity, try again later");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (waiter.granted) {
+                release(waiter, 0);
+            } else {
+                dequeue(waiter);
+            }
+            throw new ExportException("Interrupted while waiting for export capacity", e);
+        }
+    }
+
+    private boolean canStart(Waiter waiter) {
+        return inFlight < maxConcurrent
+                && connectionsInUse + waiter.connections <= maxConnections
+                && runningByUser.getOrDefault(waiter.user, 0) < maxPerUser;
+    }
+
+    private void start(Waiter waiter) {
+        inFlight++;
+        connectionsInUse += waiter.connections;
+        runningByUser.merge(waiter.user, 1, Integer::sum);
+        waiter.granted = true;
+    }
+
+    private void enqueue(Waiter waiter) {
+        ArrayDeque<Waiter> queue = queues.computeIfAbsent(waiter.user, user -> new ArrayDeque<>());
+        if (queue.isEmpty()) {
+            rotation.addLast(waiter.user);
+        }
+        queue.addLast(waiter);
+        queued++;
+    }
+
+    private void dequeue(Waiter waiter) {
+        ArrayDeque<Waiter> queue = queues.get(waiter.user);
+        if (queue != null && queue.remove(waiter)) {
+            queued--;
+            if (queue.isEmpty()) {
+                queues.remove(waiter.user);
+                rotation.remove(waiter.user);
+            }
+            // The removed waiter may have been blocking others behind it
+            dispatch();
+        }
+    }
+
+    // Starts waiting exports round-robin across users until no head of queue fits
+    private void dispatch() {
+        boolean started = false;
+        int skipped = 0;
+        while (skipped < rotation.size() && inFlight < maxConcurrent) {
+            String user = rotation.pollFirst();
+            ArrayDeque<Waiter> queue = queues.get(user);
+            Waiter head = queue.peekFirst();
+            if (canStart(head)) {
+                queue.pollFirst();
+                queued--;
+                start(head);
+                started = true;
+                skipped = 0;
+                if (queue.isEmpty()) {
+                    queues.remove(user);
+                } else {
+                    rotation.addLast(user);
+                }
+            } else {
+                rotation.addLast(user);
+                skipped++;
+            }
+        }
+        if (started) {
+            changed.signalAll();
+        }
+    }
+
+    private void release(Waiter waiter, long heldNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            connectionsInUse -= waiter.connections;
+            runningByUser.computeIfPresent(waiter.user, (user, running) -> running > 1 ? running - 1 : null);
+            if (heldNanos > 0) {
+                meanHoldSeconds = meanHoldSeconds * 0.8 + heldNanos / 1e9 * 0.2;
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ExportThrottledException reject(String reason, HttpStatus status, String message) {
+        rejections.get(reason).increment();
+        // Roughly when the exports ahead of a new arrival will have drained
+        long retryAfter = (long) Math.ceil(meanHoldSeconds * (queued / (double) maxConcurrent + 1));
+        retryAfter = Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, retryAfter));
+        log.warn("Export rejected ({}): {} running, {} queued, retry after {}s", reason, inFlight, queued, retryAfter);
+        return new ExportThrottledException(message, status, retryAfter);
+    }
+
+    /**
+     * Held for the duration of one export; closing it lets the next waiting export start.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Waiter waiter;
+        private final Counter bytes;
+        private final long startedNanos = System.nanoTime();
+        private boolean closed;
+
+        private Permit(Waiter waiter, Counter bytes) {
+            this.waiter = waiter;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Counts what the export writes to {@code out} in parcel.export.bytes.
+         */
+        public OutputStream track(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    bytes.increment();
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    bytes.increment(len);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(waiter, System.nanoTime() - startedNanos);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final String user;
+        final int connections;
+        boolean granted;
+
+        Waiter(String user, int connections) {
+            this.user = user;
+            this.connections = connections;
+        }
+    }
+}
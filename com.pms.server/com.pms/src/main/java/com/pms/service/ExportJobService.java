@@ -0,0 +1,19 @@
+package com.pms.service;
+
+import java.nio.file.Path;
+
+import com.pms.dto.ExportJobRequestDto;
+import com.pms.dto.ExportJobStatusDto;
+
+public interface ExportJobService {
+
+    // Queues an export, or returns the live job / cached artifact for an identical request
+    ExportJobStatusDto submit(ExportJobRequestDto request);
+
+    ExportJobStatusDto getStatus(String jobId);
+
+    // Path of the finished artifact; throws ResourceNotFoundException if unknown or expired
+    Path getArtifact(String jobId);
+
+    String getContentType(String jobId);
+}
@@ -1,4 +1,3 @@
-
   package com.pms.service;
   
   
@@ -7,8 +6,16 @@
   
   import java.io.IOException;
   
-  public interface ExportService { void
+  public interface ExportService {
+  
+  // Response header carrying the watermark to pass as since to the next delta export
+  String WATERMARK_HEADER = "X-Export-Watermark";
+  
+  void
   exportParcelsToExcel(HttpServletResponse response, ExportFilterDTO filterDTO)
   throws IOException; void exportParcelsToPDF(HttpServletResponse response,
-  ExportFilterDTO filterDTO) throws IOException; }
- 
\ No newline at end of file
+  ExportFilterDTO filterDTO) throws IOException; void
+  exportParcelsToCsv(HttpServletResponse response, ExportFilterDTO filterDTO,
+  boolean parallel) throws IOException; void
+  exportParcelsToCsvGzip(HttpServletResponse response, ExportFilterDTO filterDTO,
+  boolean parallel) throws IOException; }
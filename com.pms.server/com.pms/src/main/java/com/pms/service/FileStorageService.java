@@ -1,49 +1,318 @@
 package com.pms.service;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pms.entity.StoredBlob;
+import com.pms.repository.StoredBlobRepository;
+import com.pms.util.ContentTypeSniffer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.Objects;
-import java.util.UUID;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
 
+/**
+ * Content-addressed upload store. A file is named after the SHA-256 of its bytes and stored once;
+ * stored_blobs counts the parcels pointing at it. Storing bytes that are already present costs
+ * one hash pass over the upload and a reference count increment.
+ *
+ * Uploads are stored in two phases so no database connection is held while bytes are copied.
+ * {@link #stage} copies the upload to a temp file under {@code .tmp} while hashing it and, if
+ * the bytes are new, publishes them to the {@link BlobStore}, all outside any transaction;
+ * {@link #commit}, inside the caller's short transaction, only adds the reference. Staged files
+ * left by requests that never reached commit are removed by a scheduled sweep. The blob is
+ * deleted after the transaction that drops its last reference commits. Files stored under the
+ * old {@code UUID_name} scheme are still served.
+ *
+ * The content type is sniffed from the bytes during the hash pass and stored with the blob.
+ * Derived files (image variants) are stored beside their blob as {@code <hash>.<variant>}, are
+ * just as immutable, and are deleted with it.
+ *
+ * Where the bytes live is up to the {@link BlobStore} driver; staging always uses the local
+ * {@code file.upload-dir}.
+ */
 @Service
+@Slf4j
 public class FileStorageService {
-    
-    private final Path fileStorageLocation;
-    
-    public FileStorageService(@Value("${file.upload-dir}") String uploadDir) throws IOException {
-        this.fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
-        Files.createDirectories(this.fileStorageLocation);
-    }
-    
-    public String storeFile(MultipartFile file) throws IOException {
-        // StringUtils from Spring's utility package
-        String fileName = StringUtils.cleanPath(Objects.requireNonNull(file.getOriginalFilename()));
-        
-        // Generate unique filename
-        String uniqueFileName = UUID.randomUUID() + "_" + fileName;
-        
-        Path targetLocation = this.fileStorageLocation.resolve(uniqueFileName);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-        
-        return uniqueFileName;
-    }
-    
+
+    // Parcel.imagePath is this prefix followed by the stored file name
+    public static final String IMAGE_PATH_PREFIX = "/api/parcels/image/";
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    // A blob or one of its derivatives: the bytes behind such a name never change
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("[0-9a-f]{64}(\\.[a-z]+)?");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String STAGED_PREFIX = "staged-";
+
+    private final Path tempLocation;
+    private final BlobStore blobStore;
+    private final StoredBlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration stagingMaxAge;
+    // name -> content type; entries never go stale because a content-addressed file never changes
+    private final Cache<String, String> contentTypes = Caffeine.newBuilder().maximumSize(10_000).build();
+
+    public FileStorageService(@Value("${file.upload-dir}") String uploadDir,
+                              BlobStore blobStore,
+                              StoredBlobRepository blobRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${file.staging.max-age-minutes:60}") long stagingMaxAgeMinutes) throws IOException {
+        this.tempLocation = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(".tmp");
+        Files.createDirectories(this.tempLocation);
+        this.blobStore = blobStore;
+        this.blobRepository = blobRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Purges run from afterCommit/afterCompletion, where the finished transaction's resources
+        // are still bound: REQUIRED would join it instead of starting the transaction they need
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.stagingMaxAge = Duration.ofMinutes(stagingMaxAgeMinutes);
+    }
+
+    /**
+     * Phase one: copies the upload to a staged temp file, hashing and sniffing it on the way, and
+     * publishes the bytes unless the store already has them. Call this before the transaction
+     * starts; the caller must {@link #discard} the result, after {@link #commit} or instead of it.
+     */
+    public StagedUpload stage(MultipartFile file) throws IOException {
+        Path temp = Files.createTempFile(tempLocation, STAGED_PREFIX, ".part");
+        try {
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] head = new byte[ContentTypeSniffer.HEAD_LENGTH];
+            int headLength = 0;
+            long size = 0;
+            try (InputStream in = file.getInputStream(); OutputStream out = Files.newOutputStream(temp)) {
+                for (int n; (n = in.read(buffer)) != -1; ) {
+                    if (headLength < head.length) {
+                        int copied = Math.min(n, head.length - headLength);
+                        System.arraycopy(buffer, 0, head, headLength, copied);
+                        headLength += copied;
+                    }
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    size += n;
+                }
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String contentType = ContentTypeSniffer.detect(head, headLength);
+            boolean published = false;
+            if (!blobStore.exists(hash)) {
+                blobStore.put(hash, temp, contentType);
+                published = true;
+                log.info("Stored new blob {} ({} bytes)", hash, size);
+            }
+            return new StagedUpload(hash, size, contentType, temp, published);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Phase two: adds a reference to the staged bytes in the current transaction. The bytes were
+     * published by {@link #stage}; they are only put again here if a purge of the same hash
+     * removed them in between.
+     *
+     * @return the file name, which is the content hash
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public String commit(StagedUpload upload) throws IOException {
+        String hash = upload.hash();
+        // Reference first: the row lock keeps a concurrent purge of the same blob from deleting the file
+        blobRepository.addReference(hash, upload.size(), upload.contentType(), Instant.now());
+
+        if (!blobStore.exists(hash)) {
+            blobStore.put(hash, upload.path(), upload.contentType());
+            log.info("Re-stored blob {} purged while staged", hash);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    // The put is not undone by the rollback; drop the blob unless someone else uses it.
+                    // discard() covers blobs staging published, this also covers a re-put above
+                    purgeIfUnreferenced(upload);
+                }
+            }
+        });
+        return hash;
+    }
+
+    /**
+     * Deletes the staged file. If {@link #stage} published the bytes and no reference was
+     * committed (the request failed before or inside its transaction), the blob is purged too.
+     */
+    public void discard(StagedUpload upload) {
+        try {
+            Files.deleteIfExists(upload.path());
+        } catch (IOException e) {
+            // Removed by the staging sweep later
+            log.warn("Could not delete staged upload {}: {}", upload.path().getFileName(), e.getMessage());
+        }
+        if (upload.published()) {
+            purgeIfUnreferenced(upload);
+        }
+    }
+
+    /**
+     * Removes temp files of uploads and derivatives whose request died before commit or discard
+     * (a crash or a killed thread). Anything older than the longest plausible request is abandoned.
+     */
+    @Scheduled(fixedDelayString = "${file.staging.sweep-interval-ms:900000}",
+               initialDelayString = "${file.staging.sweep-interval-ms:900000}")
+    public void removeAbandonedStagedFiles() {
+        Instant cutoff = Instant.now().minus(stagingMaxAge);
+        int removed = 0;
+        try (DirectoryStream<Path> staged = Files.newDirectoryStream(tempLocation, "*.part")) {
+            for (Path file : staged) {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff) && Files.deleteIfExists(file)) {
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not remove staged file {}: {}", file.getFileName(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not sweep staged uploads: {}", e.getMessage());
+        }
+        if (removed > 0) {
+            log.info("Removed {} abandoned staged files", removed);
+        }
+    }
+
+    /**
+     * Drops one reference to a stored blob. Names from the old UUID_name scheme are not
+     * reference counted and are left alone.
+     */
+    @Transactional
+    public void release(String fileName) {
+        if (!isHash(fileName)) {
+            return;
+        }
+        blobRepository.removeReference(fileName);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    purgeIfUnreferenced(fileName);
+                }
+            });
+        } else {
+            purgeIfUnreferenced(fileName);
+        }
+    }
+
+    /**
+     * Stores a file derived from a blob, e.g. a resized image, as {@code <hash>.<suffix>}.
+     */
+    public void storeDerivative(String hash, String suffix, byte[] bytes) throws IOException {
+        blobStore.put(derivativeName(hash, suffix), new ByteArrayInputStream(bytes), bytes.length,
+                ContentTypeSniffer.detect(bytes, Math.min(bytes.length, ContentTypeSniffer.HEAD_LENGTH)));
+    }
+
+    public boolean exists(String fileName) {
+        try {
+            return blobStore.exists(fileName);
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException e) {
+            log.warn("Could not check {}: {}", fileName, e.getMessage());
+            return false;
+        }
+    }
+
+    public static String derivativeName(String hash, String suffix) {
+        return hash + "." + suffix;
+    }
+
+    /**
+     * Opens a stored file for serving; the caller closes it. Blob metadata never changes for a
+     * given hash, so the content type is read from stored_blobs (or sniffed, for derivatives) once
+     * and then served from memory.
+     */
+    public StoredFile open(String fileName) throws IOException {
+        FileChannel channel = blobStore.openLocal(fileName);
+        try {
+            Path path = blobStore.permanentFile(fileName);
+            long size = channel.size();
+            if (isContentAddressed(fileName)) {
+                String contentType = contentTypes.getIfPresent(fileName);
+                if (contentType == null) {
+                    contentType = isHash(fileName)
+                            ? blobRepository.findById(fileName).map(StoredBlob::getContentType).orElse(null)
+                            : null;
+                    if (contentType == null) {
+                        contentType = sniff(channel);
+                    }
+                    contentTypes.put(fileName, contentType);
+                }
+                return new StoredFile(fileName, channel, path, size, contentType, etag(fileName), true);
+            }
+            // Old UUID_name files: no stored hash, so a weak validator from size and, where the
+            // file is the object itself, modification time (such names are never rewritten)
+            String validator = Long.toHexString(size)
+                    + (path != null ? "-" + Long.toHexString(Files.getLastModifiedTime(path).toMillis()) : "");
+            return new StoredFile(fileName, channel, path, size, sniff(channel), "W/\"" + validator + "\"", false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Strong ETag of a content-addressed file or derivative, known from its name alone.
+     */
+    public static String etag(String fileName) {
+        return isContentAddressed(fileName) ? "\"" + fileName + "\"" : null;
+    }
+
+    public static boolean isHash(String fileName) {
+        return fileName != null && HASH.matcher(fileName).matches();
+    }
+
+    public static boolean isContentAddressed(String fileName) {
+        return fileName != null && CONTENT_ADDRESSED.matcher(fileName).matches();
+    }
+
     public Resource loadFileAsResource(String fileName) throws FileNotFoundException {
         try {
-            Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-            
+            Path filePath = blobStore.permanentFile(fileName);
+            Resource resource = filePath != null
+                    ? new UrlResource(filePath.toUri())
+                    : new InputStreamResource(blobStore.get(fileName));
+
             if (resource.exists()) {
                 return resource;
             } else {
@@ -53,4 +322,101 @@ public class FileStorageService {
             throw new FileNotFoundException("File not found " + fileName);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The stored file's own path when the store keeps it on this node, else null.
+     */
+    Path permanentFile(String fileName) throws IOException {
+        return blobStore.permanentFile(fileName);
+    }
+
+    /**
+     * A stored file's bytes, opened on this node for decoding; the caller closes the channel.
+     */
+    FileChannel openLocal(String fileName) throws IOException {
+        return blobStore.openLocal(fileName);
+    }
+
+    // Row and file go together, in one short transaction so an uploader of the same bytes either
+    // waits for it and then re-creates the file, or has already re-referenced the row
+    private void purgeIfUnreferenced(String hash) {
+        purge(hash, null);
+    }
+
+    // After a rolled back commit, or a failed request whose staging published the bytes, the row
+    // may not exist at all; it is (re)created unreferenced first so the purge holds the same row
+    // lock an uploader of these bytes would take
+    private void purgeIfUnreferenced(StagedUpload rolledBack) {
+        purge(rolledBack.hash(), rolledBack);
+    }
+
+    private void purge(String hash, StagedUpload rolledBack) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (rolledBack != null) {
+                    blobRepository.lockUnreferenced(hash, rolledBack.size(), rolledBack.contentType(), Instant.now());
+                }
+                if (blobRepository.deleteIfUnreferenced(hash) == 1) {
+                    try {
+                        deleteBlobFiles(hash);
+                        log.info("Deleted unreferenced blob {}", hash);
+                    } catch (IOException e) {
+                        // Row is gone either way; the stray file is harmless and re-used if uploaded again
+                        log.warn("Could not delete blob {}: {}", hash, e.getMessage());
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not purge blob {}: {}", hash, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes a blob and its derivatives from the store. The caller holds the blob's row lock
+     * and has deleted the row.
+     *
+     * @return bytes freed
+     */
+    long deleteBlobFiles(String hash) throws IOException {
+        long freed = blobStore.deleteAll(hash);
+        contentTypes.asMap().keySet().removeIf(name -> name.startsWith(hash));
+        return freed;
+    }
+
+    // Positional reads: the channel's position stays at 0 for the caller
+    private static String sniff(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(ContentTypeSniffer.HEAD_LENGTH);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+        }
+        return ContentTypeSniffer.detect(head.array(), head.position());
+    }
+
+    /**
+     * An open file ready to be served; {@code immutable} when the name is the content hash.
+     * {@code path} is set when the file may also be opened by name later (sendfile), see
+     * {@link BlobStore#permanentFile}.
+     */
+    public record StoredFile(String name, FileChannel channel, Path path, long size, String contentType,
+                             String etag, boolean immutable) implements Closeable {
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * An upload copied to the staging area, not yet referenced; {@code published} when staging
+     * put its bytes in the store.
+     */
+    public record StagedUpload(String hash, long size, String contentType, Path path, boolean published) {
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.pms.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import com.pms.service.FileStorageService.StoredFile;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves stored parcel images with validators, caching headers and single byte ranges.
+ *
+ * A content-addressed file never changes, so its ETag is the hash and it is cacheable forever;
+ * a matching If-None-Match is answered 304 from the name alone, without a database lookup or a
+ * filesystem access. Files the store keeps under a stable path are handed to Tomcat's sendfile
+ * when the connector offers it; everything else (and S3 cache copies, which may be evicted before
+ * Tomcat opens them) is copied with FileChannel.transferTo from the channel opened for the
+ * request, so the bytes do not pass through a heap buffer of ours either way.
+ */
+@Service
+@Slf4j
+public class ImageDeliveryService {
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    // Old UUID_name files have no content hash; let caches revalidate daily
+    private static final String REVALIDATE = "public, max-age=86400";
+    // Original standing in for a variant that is not generated yet: the URL will change content
+    private static final String PROVISIONAL = "no-cache";
+
+    // Tomcat's sendfile request attributes (end is exclusive)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final FileStorageService fileStorageService;
+
+    public ImageDeliveryService(FileStorageService fileStorageService) {
+        this.fileStorageService = fileStorageService;
+    }
+
+    /**
+     * Writes the file (or the requested range of it) to the response.
+     *
+     * @throws java.io.FileNotFoundException when no such file is stored
+     */
+    public void serve(String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(fileName, false, request, response);
+    }
+
+    /**
+     * @param provisional the file is served in place of another one that will replace it at the
+     *                    same URL (an image variant still being generated), so it must be revalidated
+     */
+    public void serve(String fileName, boolean provisional, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        String strongEtag = FileStorageService.etag(fileName);
+        if (strongEtag != null && matches(ifNoneMatch, strongEtag)) {
+            notModified(response, strongEtag, provisional ? PROVISIONAL : IMMUTABLE);
+            return;
+        }
+
+        try (StoredFile file = fileStorageService.open(fileName)) {
+            String cacheControl = provisional ? PROVISIONAL : file.immutable() ? IMMUTABLE : REVALIDATE;
+            if (matches(ifNoneMatch, file.etag())) {
+                notModified(response, file.etag(), cacheControl);
+                return;
+            }
+
+            response.setHeader(HttpHeaders.ETAG, file.etag());
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setHeader("X-Content-Type-Options", "nosniff");
+            response.setContentType(file.contentType());
+
+            long size = file.size();
+            long start = 0;
+            long end = size;
+            String range = request.getHeader(HttpHeaders.RANGE);
+            // If-Range: only serve a part of the representation the client already has part of
+            if (range != null && ifRangeHolds(request.getHeader(HttpHeaders.IF_RANGE), file)) {
+                long[] bounds = parseRange(range, size);
+                if (bounds == UNSATISFIABLE) {
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.setContentLength(0);
+                    return;
+                }
+                if (bounds != null) {
+                    start = bounds[0];
+                    end = bounds[1];
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+                }
+            }
+            response.setContentLengthLong(end - start);
+            if ("HEAD".equals(request.getMethod()) || end == start) {
+                return;
+            }
+            transfer(file, start, end, request, response);
+        }
+    }
+
+    private void transfer(StoredFile file, long start, long end, HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        // Re-checked last thing: a purge since the open would break the response after its headers,
+        // while the open channel can still send the bytes. See BlobStore#permanentFile for what remains
+        if (file.path() != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                && Files.isRegularFile(file.path())) {
+            // Tomcat sends the file straight from the page cache once this request returns
+            request.setAttribute(SENDFILE_FILENAME, file.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        // Not closed: the container owns the response stream
+        WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+        for (long position = start; position < end; ) {
+            long sent = file.channel().transferTo(position, end - position, target);
+            if (sent <= 0) {
+                throw new EOFException("File " + file.name() + " ended at " + position);
+            }
+            position += sent;
+        }
+        response.flushBuffer();
+    }
+
+    private static void notModified(HttpServletResponse response, String etag, String cacheControl) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+    }
+
+    // If-None-Match uses the weak comparison: W/ prefixes are ignored
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // If-Range needs a strong match; we send no Last-Modified, so a date never matches
+    private static boolean ifRangeHolds(String ifRange, StoredFile file) {
+        return ifRange == null || (file.immutable() && ifRange.trim().equals(file.etag()));
+    }
+
+    /**
+     * Parses a single "bytes=" range into half-open [start, end) bounds.
+     *
+     * @return the bounds, {@link #UNSATISFIABLE} when the range starts past the end, or null when
+     *         the header should be ignored (malformed or several ranges) and the whole file sent
+     */
+    static long[] parseRange(String header, long size) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6) || value.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = value.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // Suffix range: the last n bytes
+                long length = Long.parseLong(last);
+                if (length <= 0 || size == 0) {
+                    return length < 0 ? null : UNSATISFIABLE;
+                }
+                return new long[] {Math.max(0, size - length), size};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            if (start >= size) {
+                return UNSATISFIABLE;
+            }
+            return new long[] {start, Math.min(end, size - 1) + 1};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.pms.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Produces downscaled variants of uploaded images so list views do not load full photos.
+ *
+ * Variants are JPEGs stored beside the original as {@code <hash>.<variant>} and generated on a
+ * small bounded pool after the upload commits. Until a variant exists, callers serve the original;
+ * asking for a missing variant also schedules it, which covers images uploaded before variants
+ * existed, jobs dropped because the queue was full and jobs that failed to read or store (a
+ * storage timeout). Images ImageIO cannot decode (WebP, HEIC, CMYK JPEG, corrupt data), oversized
+ * images and images already smaller than a variant are remembered and not retried until restart.
+ *
+ * Meters: parcel.image.variants{result} (counter), parcel.image.resize (timer).
+ */
+@Service
+@Slf4j
+public class ImageVariantService {
+
+    public enum Variant {
+        THUMB("thumb", 160),
+        MEDIUM("medium", 800);
+
+        private final String suffix;
+        private final int maxSide;
+
+        Variant(String suffix, int maxSide) {
+            this.suffix = suffix;
+            this.maxSide = maxSide;
+        }
+
+        public String suffix() {
+            return suffix;
+        }
+
+        /**
+         * @return the variant named by a request parameter, or null for none or "original"
+         * @throws IllegalArgumentException for an unknown name
+         */
+        public static Variant fromParam(String value) {
+            if (value == null || value.isBlank() || value.equalsIgnoreCase("original")) {
+                return null;
+            }
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final float JPEG_QUALITY = 0.82f;
+
+    private final FileStorageService fileStorageService;
+    private final ThreadPoolTaskExecutor executor;
+    private final long maxSourcePixels;
+    // Hashes being generated or waiting in the queue
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // Hashes that produce no variant (unsupported, too large, or already small)
+    private final Cache<String, Boolean> skipped = Caffeine.newBuilder().maximumSize(10_000).build();
+
+    private final Timer resizeTimer;
+    private final MeterRegistry meterRegistry;
+
+    public ImageVariantService(FileStorageService fileStorageService,
+                               @Qualifier("imageVariantExecutor") ThreadPoolTaskExecutor executor,
+                               @Value("${parcel.image.variants.max-source-pixels:50000000}") long maxSourcePixels,
+                               MeterRegistry meterRegistry) {
+        this.fileStorageService = fileStorageService;
+        this.executor = executor;
+        this.maxSourcePixels = maxSourcePixels;
+        this.meterRegistry = meterRegistry;
+        this.resizeTimer = Timer.builder("parcel.image.resize").register(meterRegistry);
+    }
+
+    /**
+     * Schedules the variants of a newly stored image once the current transaction commits, so a
+     * rolled back upload is not resized.
+     */
+    public void scheduleAfterCommit(String hash) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedule(hash);
+                }
+            });
+        } else {
+            schedule(hash);
+        }
+    }
+
+    /**
+     * Name of the stored variant of an image, or null when it is not available (yet), in which
+     * case the caller serves the original.
+     */
+    public String resolve(String fileName, Variant variant) {
+        if (!FileStorageService.isHash(fileName)) {
+            // Old UUID_name files are not variant-tracked
+            return null;
+        }
+        String name = FileStorageService.derivativeName(fileName, variant.suffix());
+        if (fileStorageService.exists(name)) {
+            return name;
+        }
+        if (skipped.getIfPresent(fileName) == null && fileStorageService.exists(fileName)) {
+            schedule(fileName);
+        }
+        return null;
+    }
+
+    private void schedule(String hash) {
+        if (!pending.add(hash)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    resizeTimer.record(() -> generate(hash));
+                } finally {
+                    pending.remove(hash);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            pending.remove(hash);
+            count("rejected");
+            log.debug("Variant queue full, {} will be resized when next requested", hash);
+        }
+    }
+
+    private void generate(String hash) {
+        BufferedImage source;
+        try {
+            source = decode(hash);
+        } catch (IIOException | RuntimeException e) {
+            // The stored bytes do not decode; they will not change
+            source = null;
+            log.warn("Could not decode {}: {}", hash, e.getMessage());
+        } catch (IOException e) {
+            retryLater(hash, e);
+            return;
+        }
+        if (source == null) {
+            skipped.put(hash, Boolean.TRUE);
+            count("skipped");
+            return;
+        }
+        try {
+            // Largest first, each smaller variant scaled from the previous one
+            BufferedImage current = source;
+            for (int i = Variant.values().length - 1; i >= 0; i--) {
+                Variant variant = Variant.values()[i];
+                current = scale(current, variant.maxSide);
+                fileStorageService.storeDerivative(hash, variant.suffix(), encode(current));
+                count("created");
+            }
+            log.debug("Stored variants of {}", hash);
+        } catch (IOException | RuntimeException e) {
+            retryLater(hash, e);
+        }
+    }
+
+    // Reading or storing failed (an S3 timeout, a full disk): the next request for a variant retries
+    private void retryLater(String hash, Exception e) {
+        count("failed");
+        log.warn("Could not create variants of {}, will retry when next requested: {}", hash, e.getMessage());
+    }
+
+    /**
+     * Decodes the original, subsampled while reading so a large photo is never held at full size.
+     *
+     * @return null when the image needs no variants or cannot be decoded
+     */
+    private BufferedImage decode(String hash) throws IOException {
+        try (FileChannel channel = fileStorageService.openLocal(hash);
+             ImageInputStream in = openImage(hash, channel)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                log.debug("No decoder for {}", hash);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int longest = Math.max(width, height);
+                if ((long) width * height > maxSourcePixels) {
+                    log.warn("Image {} is {}x{}, too large to resize", hash, width, height);
+                    return null;
+                }
+                if (longest <= Variant.THUMB.maxSide) {
+                    return null;
+                }
+                // Keep at least twice the largest variant so the final scale still smooths
+                int subsampling = Math.max(1, longest / (2 * Variant.MEDIUM.maxSide));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Random access on the stored file when it has a path, else buffered reads from the open channel
+    private ImageInputStream openImage(String hash, FileChannel channel) throws IOException {
+        Path path = fileStorageService.permanentFile(hash);
+        return path != null
+                ? ImageIO.createImageInputStream(path.toFile())
+                : new MemoryCacheImageInputStream(Channels.newInputStream(channel));
+    }
+
+    // Halves with bilinear filtering until within 2x, then scales to fit; returns an opaque RGB image
+    private static BufferedImage scale(BufferedImage image, int maxSide) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        while (Math.max(width, height) > maxSide) {
+            int longest = Math.max(width, height);
+            double factor = longest / 2 >= maxSide ? 0.5 : maxSide / (double) longest;
+            width = Math.max(1, (int) Math.round(width * factor));
+            height = Math.max(1, (int) Math.round(height * factor));
+            image = draw(image, width, height);
+        }
+        return image.getType() == BufferedImage.TYPE_INT_RGB ? image : draw(image, width, height);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            // JPEG has no alpha; transparent areas become white
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private void count(String result) {
+        Counter.builder("parcel.image.variants").tag("result", result).register(meterRegistry).increment();
+    }
+}
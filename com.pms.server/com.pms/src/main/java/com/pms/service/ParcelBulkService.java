@@ -0,0 +1,17 @@
+package com.pms.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.pms.dto.BulkIngestResultDto;
+import com.pms.dto.BulkStatusUpdateDto;
+import com.pms.dto.BulkStatusUpdateResultDto;
+
+public interface ParcelBulkService {
+    // Body is a JSON array of ParcelDto objects, read element by element
+    BulkIngestResultDto ingestJson(InputStream body) throws IOException;
+    // Body is CSV with a header row naming ParcelDto fields
+    BulkIngestResultDto ingestCsv(InputStream body) throws IOException;
+    // Moves the addressed parcels to the target status with one set-based UPDATE
+    BulkStatusUpdateResultDto transitionStatus(BulkStatusUpdateDto request);
+}
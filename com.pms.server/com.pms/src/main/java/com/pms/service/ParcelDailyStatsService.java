@@ -0,0 +1,18 @@
+package com.pms.service;
+
+import java.util.Collection;
+
+/**
+ * Keeps the parcel_daily_stats rollup in step with the parcels table.
+ * Callers subtract a parcel's current row before changing it and add it back after the change
+ * has been flushed, all inside the same transaction.
+ */
+public interface ParcelDailyStatsService {
+    void add(Collection<Long> parcelIds);
+    void subtract(Collection<Long> parcelIds);
+    // Only parcels currently in one of the given statuses are subtracted
+    void subtract(Collection<Long> parcelIds, Collection<String> statuses);
+    void addByTrackingNumbers(Collection<String> trackingNumbers);
+    // Recomputes the whole rollup from the parcels table; returns the number of buckets written
+    int rebuild();
+}
@@ -0,0 +1,248 @@
+package com.pms.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.pms.dto.ExportFilterDTO;
+import com.pms.entity.Parcel;
+import com.pms.entity.ParcelTombstone;
+import com.pms.exception.DeltaHistoryExpiredException;
+import com.pms.repository.ParcelRepository;
+import com.pms.repository.ParcelTombstoneRepository;
+import com.pms.util.ParcelRowWriter;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Feeds export writers from a forward-only cursor over the filtered parcels, in id order.
+ *
+ * Rows are fetched {@code parcel.export.fetch-size} at a time; after each chunk has been handed
+ * to the writer the writer is flushed and the persistence context cleared, so neither the
+ * session nor the heap grows with the size of the export.
+ *
+ * Delta exports (a filter with {@code since}) select rows whose lastModifiedAt falls in
+ * (since, until] and append the parcels deleted in the same window. until lags the clock by
+ * {@code parcel.export.delta.settle-seconds}: a write stamps lastModifiedAt before it commits, so
+ * a row stamped just before the watermark may become visible only after the export has read past
+ * it. Stopping short of the clock leaves such rows to the next run, provided no write transaction
+ * stays open longer than the settle time.
+ */
+@Service
+@Slf4j
+public class ParcelExportRowSource {
+
+    private final ParcelRepository parcelRepository;
+    private final ParcelTombstoneRepository tombstoneRepository;
+    private final int fetchSize;
+    private final Duration settleTime;
+    private final Duration tombstoneRetention;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public ParcelExportRowSource(ParcelRepository parcelRepository,
+                                 ParcelTombstoneRepository tombstoneRepository,
+                                 @Value("${parcel.export.fetch-size:500}") int fetchSize,
+                                 @Value("${parcel.export.delta.settle-seconds:60}") long settleSeconds,
+                                 @Value("${parcel.export.delta.tombstone-retention-days:30}") long retentionDays) {
+        this.parcelRepository = parcelRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.fetchSize = fetchSize;
+        this.settleTime = Duration.ofSeconds(settleSeconds);
+        this.tombstoneRetention = Duration.ofDays(retentionDays);
+    }
+
+    /**
+     * Fixes the upper bound of the export and returns it as the watermark for the next delta run
+     * ({@code since} of the next request). For a delta filter without {@code until} the bound is
+     * stored in the filter; a full export is not bounded, but its watermark is still safe to
+     * continue from since every row at or before it is included.
+     */
+    public Instant resolveWatermark(ExportFilterDTO filterDTO) {
+        if (filterDTO != null && filterDTO.getUntil() != null) {
+            return filterDTO.getUntil();
+        }
+        Instant watermark = Instant.now().minus(settleTime).truncatedTo(ChronoUnit.MICROS);
+        if (filterDTO != null && filterDTO.getSince() != null) {
+            if (filterDTO.getSince().isBefore(Instant.now().minus(tombstoneRetention))) {
+                // Deletes older than the retention are gone; the client needs a full export
+                throw new DeltaHistoryExpiredException(filterDTO.getSince(), tombstoneRetention.toDays());
+            }
+            filterDTO.setUntil(watermark);
+        }
+        return watermark;
+    }
+
+    // Row count for progress reporting; same filter as writeAll
+    public long count(ExportFilterDTO filterDTO) {
+        return filterDTO == null ? parcelRepository.count() : parcelRepository.count(toSpecification(filterDTO));
+    }
+
+    /**
+     * @return the number of parcels written
+     */
+    @Transactional(readOnly = true)
+    public long writeAll(ExportFilterDTO filterDTO, ParcelRowWriter writer) throws IOException {
+        long count = writeRange(filterDTO, null, null, writer);
+        writeDeleted(filterDTO, writer);
+        return count;
+    }
+
+    /**
+     * Delta exports only (no-op otherwise): writes the parcels deleted in (since, until], after
+     * the rows. Call after {@link #resolveWatermark}.
+     *
+     * @return the number of tombstones written
+     */
+    @Transactional(readOnly = true)
+    public long writeDeleted(ExportFilterDTO filterDTO, ParcelRowWriter writer) throws IOException {
+        if (filterDTO == null || filterDTO.getSince() == null) {
+            return 0;
+        }
+        long count = 0;
+        try (Stream<ParcelTombstone> tombstones =
+                     tombstoneRepository.streamDeleted(filterDTO.getSince(), filterDTO.getUntil())) {
+            Iterator<ParcelTombstone> iterator = tombstones.iterator();
+            while (iterator.hasNext()) {
+                writer.writeDeleted(iterator.next());
+                if (++count % fetchSize == 0) {
+                    writer.flush();
+                    entityManager.clear();
+                }
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    @Scheduled(cron = "${parcel.export.delta.tombstone-purge-cron:0 45 2 * * *}")
+    @Transactional
+    public void purgeTombstones() {
+        int purged = tombstoneRepository.deleteOlderThan(Instant.now().minus(tombstoneRetention));
+        log.info("Purged {} parcel tombstones older than {} days", purged, tombstoneRetention.toDays());
+    }
+
+    /**
+     * Writes the filtered parcels with fromId <= id < toId (either bound may be null) in id order;
+     * partitions of one export each call this on their own thread and connection.
+     *
+     * @return the number of parcels written
+     */
+    @Transactional(readOnly = true)
+    public long writeRange(ExportFilterDTO filterDTO, Long fromId, Long toId, ParcelRowWriter writer)
+            throws IOException {
+        long count = 0;
+        try (Stream<Parcel> parcels = openCursor(filterDTO, fromId, toId)) {
+            Iterator<Parcel> iterator = parcels.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+                if (++count % fetchSize == 0) {
+                    writer.flush();
+                    entityManager.clear();
+                }
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * @return {min id, max id} of the filtered parcels, or null when nothing matches
+     */
+    @Transactional(readOnly = true)
+    public long[] idRange(ExportFilterDTO filterDTO) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Parcel> root = query.from(Parcel.class);
+        query.multiselect(cb.min(root.<Long>get("id")), cb.max(root.<Long>get("id")));
+        query.where(predicates(filterDTO, null, null, root, query, cb));
+        Object[] bounds = entityManager.createQuery(query).getSingleResult();
+        return bounds[0] == null ? null : new long[] {(Long) bounds[0], (Long) bounds[1]};
+    }
+
+    private Stream<Parcel> openCursor(ExportFilterDTO filterDTO, Long fromId, Long toId) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Parcel> query = cb.createQuery(Parcel.class);
+        Root<Parcel> root = query.from(Parcel.class);
+        query.where(predicates(filterDTO, fromId, toId, root, query, cb));
+        query.orderBy(cb.asc(root.get("id")));
+        return entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    private static Predicate[] predicates(ExportFilterDTO filterDTO, Long fromId, Long toId, Root<Parcel> root,
+                                          CriteriaQuery<?> query, CriteriaBuilder cb) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (filterDTO != null) {
+            Predicate predicate = toSpecification(filterDTO).toPredicate(root, query, cb);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        if (fromId != null) {
+            predicates.add(cb.greaterThanOrEqualTo(root.get("id"), fromId));
+        }
+        if (toId != null) {
+            predicates.add(cb.lessThan(root.get("id"), toId));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    private static Specification<Parcel> toSpecification(ExportFilterDTO filterDTO) {
+        Specification<Parcel> spec = Specification.where(null);
+        
+        if (filterDTO.getStatus() != null) {
+            spec = spec.and((root, query, cb) -> 
+                cb.equal(root.get("status"), filterDTO.getStatus()));
+        }
+        
+        if (filterDTO.getStartDate() != null && filterDTO.getEndDate() != null) {
+            spec = spec.and((root, query, cb) -> 
+                cb.between(root.get("receivedAt"), filterDTO.getStartDate(), filterDTO.getEndDate()));
+        }
+        
+        if (filterDTO.getOriginCity() != null) {
+            spec = spec.and((root, query, cb) -> 
+                cb.equal(root.get("originCity"), filterDTO.getOriginCity()));
+        }
+        
+        if (filterDTO.getDestinationCity() != null) {
+            spec = spec.and((root, query, cb) -> 
+                cb.equal(root.get("destinationCity"), filterDTO.getDestinationCity()));
+        }
+
+        // Delta window (since, until] on lastModifiedAt
+        if (filterDTO.getSince() != null) {
+            spec = spec.and((root, query, cb) ->
+                cb.greaterThan(root.get("lastModifiedAt"), filterDTO.getSince()));
+        }
+
+        if (filterDTO.getSince() != null && filterDTO.getUntil() != null) {
+            spec = spec.and((root, query, cb) ->
+                cb.lessThanOrEqualTo(root.get("lastModifiedAt"), filterDTO.getUntil()));
+        }
+        
+        return spec;
+    }
+}
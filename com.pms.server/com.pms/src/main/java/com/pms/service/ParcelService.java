@@ -2,10 +2,12 @@ package com.pms.service;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.data.domain.Page;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.pms.dto.ParcelCursorPageDto;
 import com.pms.dto.ParcelDto;
 
 
@@ -13,14 +15,20 @@ public interface ParcelService {
 	ParcelDto createParcelWithImage(ParcelDto parcelDto) throws IOException;
     ParcelDto updateParcel(Long id, ParcelDto parcelDto);
     List<ParcelDto> getAllParcels();
+    // Streams every parcel to the consumer one row at a time; returns the number of rows streamed
+    long streamAllParcels(Consumer<ParcelDto> consumer);
     ParcelDto getParcelById(Long id);
     void deleteParcel(Long id);
     ParcelDto getParcelByTrackingNumber(String trackingNumber);
+    // Cheap in-memory pre-check; false means the tracking number definitely does not exist
+    boolean trackingNumberMightExist(String trackingNumber);
  
   //  Page<ParcelDto> getAllParcels(int page, int size, String sort);
     Page<ParcelDto> getParcelsWithPagination(int page, int size, String sort);
     // Filtered pagination example
     Page<ParcelDto> getParcelsByStatus(String status, int page, int size);
+    // Keyset (seek) pagination, newest first; cursor is null for the first page
+    ParcelCursorPageDto getParcelsByCursor(String cursor, int size);
     
 }
 
@@ -7,6 +7,7 @@ import java.util.List;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 
+import com.pms.dto.DeliveryLatencyDTO;
 import com.pms.dto.DeliveryPerformanceReportDTO;
 import com.pms.dto.ReportSummaryDTO;
 import com.pms.dto.StatusReportDTO;
@@ -17,6 +18,9 @@ public interface ReportService {
 	List<StatusReportDTO> generateStatusReport();
   //DeliveryPerformanceReportDTO generateDeliveryPerformanceReport(Integer month, Integer year);
     DeliveryPerformanceReportDTO generateDeliveryPerformanceReport(Integer month, Integer year, String city, String parcelType);
+    List<DeliveryLatencyDTO> getDeliveryLatency(String city, String parcelType);
+    // Recomputes the parcel_daily_stats rollup; returns the number of buckets written
+    int rebuildDailyStats();
     ResponseEntity<Resource> exportToExcel(Instant startDate, Instant endDate) throws IOException;
 
 }
@@ -0,0 +1,68 @@
+package com.pms.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pms.dto.ParcelDto;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Bounded, TTL-evicting cache of tracking lookups. Hit/miss/eviction counters are published
+ * to Micrometer as cache.* meters tagged cache=parcel.tracking (see /actuator/metrics).
+ */
+@Service
+public class TrackingNumberCache {
+
+    private final Cache<String, ParcelDto> cache;
+
+    public TrackingNumberCache(@Value("${parcel.tracking.cache.max-size:100000}") long maxSize,
+                               @Value("${parcel.tracking.cache.ttl-seconds:60}") long ttlSeconds,
+                               MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "parcel.tracking");
+    }
+
+    /**
+     * Returns the cached parcel or loads it; loader exceptions propagate and nothing is cached.
+     */
+    public ParcelDto get(String trackingNumber, Function<String, ParcelDto> loader) {
+        return cache.get(trackingNumber, loader);
+    }
+
+    /**
+     * Evicts now and again once the surrounding transaction commits, so a reader that
+     * re-populates the entry from pre-commit data cannot leave it stale.
+     */
+    public void evict(String trackingNumber) {
+        if (trackingNumber == null) {
+            return;
+        }
+        cache.invalidate(trackingNumber);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(trackingNumber);
+                }
+            });
+        }
+    }
+
+    public void evictAll(Collection<String> trackingNumbers) {
+        trackingNumbers.forEach(this::evict);
+    }
+}
@@ -0,0 +1,27 @@
+package com.pms.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public interface TrackingNumberGenerator {
+
+    String next();
+
+    // Allocates a block of numbers, e.g. for one bulk-ingest chunk
+    default List<String> next(int count) {
+        List<String> numbers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            numbers.add(next());
+        }
+        return numbers;
+    }
+
+    // True if the number was produced by this generator scheme and its check digit matches
+    boolean isValid(String trackingNumber);
+
+    // When a valid number was issued, for schemes that encode it; null otherwise
+    default Instant issuedAt(String trackingNumber) {
+        return null;
+    }
+}
@@ -0,0 +1,158 @@
+package com.pms.service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pms.repository.ParcelRepository;
+import com.pms.util.BloomFilter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory Bloom filter of every tracking number, used to answer definite misses on the
+ * tracking endpoint without a database round trip.
+ *
+ * The filter is built from the tracking_number column at startup and rebuilt periodically.
+ * Until the first build completes every lookup is let through. New numbers are added only
+ * after their transaction commits; numbers created while a rebuild is scanning are written
+ * to both the live and the new filter, so a rebuild can never lose them.
+ *
+ * Parcels created by another instance only reach this filter at the next rebuild, so a miss
+ * is not trusted for a number issued after the scan that built the filter began (less
+ * {@code recent-window-ms}, for transactions still open then and clock skew between nodes);
+ * those lookups go to the database. Numbers whose issue time cannot be read (older formats)
+ * all predate the scan.
+ */
+@Service
+@Slf4j
+public class TrackingNumberGuard {
+
+    private final ParcelRepository parcelRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final long recentWindowMillis;
+    private final TrackingNumberGenerator trackingNumberGenerator;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile BloomFilter current;
+    private volatile BloomFilter building;
+    // Numbers issued from here on may be missing from current
+    private volatile Instant trustedBefore = Instant.MIN;
+
+    public TrackingNumberGuard(ParcelRepository parcelRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${parcel.tracking.bloom.enabled:true}") boolean enabled,
+                               @Value("${parcel.tracking.bloom.expected-insertions:1000000}") long expectedInsertions,
+                               @Value("${parcel.tracking.bloom.false-positive-rate:0.01}") double falsePositiveRate,
+                               @Value("${parcel.tracking.bloom.recent-window-ms:300000}") long recentWindowMillis,
+                               TrackingNumberGenerator trackingNumberGenerator) {
+        this.parcelRepository = parcelRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.recentWindowMillis = recentWindowMillis;
+        this.trackingNumberGenerator = trackingNumberGenerator;
+    }
+
+    /**
+     * @return false only when the tracking number definitely does not exist
+     */
+    public boolean mightExist(String trackingNumber) {
+        BloomFilter filter = current;
+        if (!enabled || filter == null || filter.mightContain(trackingNumber)) {
+            return true;
+        }
+        // Possibly created on another instance since the filter was built
+        Instant issuedAt = trackingNumberGenerator.issuedAt(trackingNumber);
+        return issuedAt != null && !issuedAt.isBefore(trustedBefore);
+    }
+
+    /**
+     * Adds a newly created tracking number once the surrounding transaction (if any) commits.
+     */
+    public void register(String trackingNumber) {
+        if (!enabled || trackingNumber == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(trackingNumber);
+                }
+            });
+        } else {
+            add(trackingNumber);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${parcel.tracking.bloom.rebuild-interval-ms:3600000}",
+               fixedDelayString = "${parcel.tracking.bloom.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        if (!enabled || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            Instant scanStarted = Instant.ofEpochMilli(started).minusMillis(recentWindowMillis);
+            long rows = parcelRepository.count();
+            BloomFilter next = new BloomFilter(Math.max(expectedInsertions, rows * 2), falsePositiveRate);
+            // Publish before scanning so numbers committed during the scan reach the new filter too
+            building = next;
+            AtomicLong loaded = new AtomicLong();
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<String> trackingNumbers = parcelRepository.streamAllTrackingNumbers()) {
+                    trackingNumbers.forEach(trackingNumber -> {
+                        if (trackingNumber != null) {
+                            next.put(trackingNumber);
+                            loaded.incrementAndGet();
+                        }
+                    });
+                }
+            });
+            trustedBefore = scanStarted;
+            current = next;
+            log.info("Tracking number bloom filter built: {} numbers, {} bits, {} hashes in {} ms",
+                    loaded.get(), next.bitCount(), next.hashCount(), System.currentTimeMillis() - started);
+        } catch (RuntimeException e) {
+            log.error("Tracking number bloom filter rebuild failed: {}", e.getMessage(), e);
+        } finally {
+            building = null;
+            rebuilding.set(false);
+        }
+    }
+
+    // building before current: a rebuild publishes current before it clears building, so one of
+    // the two reads sees the filter that survives
+    private void add(String trackingNumber) {
+        BloomFilter next = building;
+        BloomFilter live = current;
+        if (next != null) {
+            next.put(trackingNumber);
+        }
+        if (live != null && live != next) {
+            live.put(trackingNumber);
+        }
+    }
+}
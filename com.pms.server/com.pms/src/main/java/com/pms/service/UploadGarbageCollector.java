@@ -0,0 +1,362 @@
+package com.pms.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.pms.entity.Setting;
+import com.pms.repository.ParcelRepository;
+import com.pms.repository.SettingRepository;
+import com.pms.repository.StoredBlobRepository;
+import com.pms.util.ContentTypeSniffer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deletes stored uploads no parcel references: images of parcels deleted before uploads were
+ * reference counted, blobs published by a create that crashed before committing, and variants
+ * whose original is gone.
+ *
+ * Each run loads the referenced names from parcels.image_path into a sorted array of 64-bit keys
+ * (8 bytes per image) and walks the store's leaf shards in order through {@link BlobStore#list},
+ * from a cursor kept in the settings table, so a large store is covered over several runs and a restart resumes where the last run
+ * stopped. Files not in the set and older than the grace period are re-checked against the
+ * database before deletion; for content-addressed blobs that check runs under the stored_blobs
+ * row lock an upload of the same bytes would take, so a blob that is being re-referenced is never
+ * deleted. A key collision only keeps a file. Work per run is bounded by an I/O budget (listed
+ * objects examined) and paced to a rate.
+ *
+ * Works on either store driver. With S3 the walk costs one ListObjectsV2 request per shard
+ * directory and per 1,000 objects. Files still in the local store's old flat layout are not
+ * collected; {@link UploadShardMigrator} moves them into shards first.
+ *
+ * Meters: parcel.uploads.gc.scanned, parcel.uploads.gc.deleted, parcel.uploads.gc.reclaimed
+ * (bytes) counters, parcel.uploads.gc.run timer, parcel.uploads.gc.references gauge.
+ */
+@Service
+@Slf4j
+public class UploadGarbageCollector {
+
+    static final String CURSOR_KEY = "system.uploads-gc.cursor";
+    private static final String CURSOR_CATEGORY = "system";
+
+    private final FileStorageService fileStorageService;
+    private final BlobStore blobStore;
+    private final ParcelRepository parcelRepository;
+    private final StoredBlobRepository blobRepository;
+    private final SettingRepository settingRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final Duration grace;
+    private final int ioBudget;
+    private final int filesPerSecond;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Counter scanned;
+    private final Counter deleted;
+    private final Counter reclaimed;
+    private final Timer runTimer;
+    private volatile int referenceCount;
+
+    public UploadGarbageCollector(FileStorageService fileStorageService,
+                                  BlobStore blobStore,
+                                  ParcelRepository parcelRepository,
+                                  StoredBlobRepository blobRepository,
+                                  SettingRepository settingRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${file.upload-gc.enabled:true}") boolean enabled,
+                                  @Value("${file.upload-gc.grace-hours:24}") long graceHours,
+                                  @Value("${file.upload-gc.io-budget:20000}") int ioBudget,
+                                  @Value("${file.upload-gc.files-per-second:200}") int filesPerSecond,
+                                  MeterRegistry meterRegistry) {
+        this.fileStorageService = fileStorageService;
+        this.blobStore = blobStore;
+        this.parcelRepository = parcelRepository;
+        this.blobRepository = blobRepository;
+        this.settingRepository = settingRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.grace = Duration.ofHours(graceHours);
+        this.ioBudget = ioBudget;
+        this.filesPerSecond = Math.max(1, filesPerSecond);
+
+        this.scanned = Counter.builder("parcel.uploads.gc.scanned").register(meterRegistry);
+        this.deleted = Counter.builder("parcel.uploads.gc.deleted").register(meterRegistry);
+        this.reclaimed = Counter.builder("parcel.uploads.gc.reclaimed").baseUnit("bytes").register(meterRegistry);
+        this.runTimer = Timer.builder("parcel.uploads.gc.run").register(meterRegistry);
+        Gauge.builder("parcel.uploads.gc.references", this, gc -> gc.referenceCount).register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${file.upload-gc.interval-ms:3600000}",
+               fixedDelayString = "${file.upload-gc.interval-ms:3600000}")
+    public void collect() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            runTimer.record(this::run);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void run() {
+        long started = System.nanoTime();
+        ReferenceSet references = loadReferences();
+        referenceCount = references.size();
+        Instant cutoff = Instant.now().minus(grace);
+        String cursor = readCursor();
+
+        Run run = new Run(references, cutoff, started);
+        try {
+            boolean finished = true;
+            for (String leaf : leavesAfter(cursor)) {
+                // Only a fully swept leaf advances the cursor; one cut short by the budget is redone
+                if (!run.sweep(leaf)) {
+                    finished = false;
+                    break;
+                }
+                writeCursor(leaf);
+            }
+            if (finished) {
+                // Reached the end of the store: the next run starts a new pass
+                writeCursor("");
+                log.info("Upload GC finished a pass over the store");
+            }
+        } catch (IOException e) {
+            log.warn("Upload GC stopped: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Upload GC: {} entries examined, {} files deleted, {} bytes reclaimed in {} ms",
+                run.examined, run.deletedFiles, run.reclaimedBytes,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private ReferenceSet loadReferences() {
+        ReferenceSet.Builder builder = new ReferenceSet.Builder();
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<String> imagePaths = parcelRepository.streamAllImagePaths()) {
+                imagePaths.forEach(imagePath -> builder.add(fileName(imagePath)));
+            }
+        });
+        return builder.build();
+    }
+
+    // Leaf shards ("ab/cd") after the cursor, in order
+    private List<String> leavesAfter(String cursor) throws IOException {
+        List<String> leaves = new ArrayList<>();
+        for (String top : blobStore.shards("")) {
+            if (!cursor.isEmpty() && top.compareTo(cursor.substring(0, 2)) < 0) {
+                continue;
+            }
+            for (String second : blobStore.shards(top)) {
+                String leaf = top + "/" + second;
+                if (leaf.compareTo(cursor) > 0) {
+                    leaves.add(leaf);
+                }
+            }
+        }
+        return leaves;
+    }
+
+    private String readCursor() {
+        return settingRepository.findByUserIdIsNullAndSettingKey(CURSOR_KEY)
+                .map(Setting::getSettingValue)
+                .orElse("");
+    }
+
+    private void writeCursor(String cursor) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Setting setting = settingRepository.findByUserIdIsNullAndSettingKey(CURSOR_KEY).orElseGet(() -> {
+                Setting created = new Setting();
+                created.setSettingKey(CURSOR_KEY);
+                created.setCategory(CURSOR_CATEGORY);
+                created.setSettingType("string");
+                return created;
+            });
+            setting.setSettingValue(cursor);
+            settingRepository.save(setting);
+        });
+    }
+
+    /**
+     * Deletes an unreferenced blob after confirming, under its row lock, that no parcel has come
+     * to reference it since the reference set was loaded.
+     *
+     * @return bytes freed, 0 when the blob was kept
+     */
+    private long collectBlob(String hash, long size) {
+        Long freed = transactionTemplate.execute(status -> {
+            int created = blobRepository.lockUnreferenced(hash, size, ContentTypeSniffer.OCTET_STREAM, Instant.now());
+            if (parcelRepository.existsByImagePath(FileStorageService.IMAGE_PATH_PREFIX + hash)) {
+                if (created == 1) {
+                    // Referenced but never counted; leave the row missing as it was rather than at zero
+                    blobRepository.deleteIfUnreferenced(hash);
+                }
+                return 0L;
+            }
+            // A count without a parcel is a leaked reference; the parcels are authoritative
+            blobRepository.deleteByHash(hash);
+            try {
+                return fileStorageService.deleteBlobFiles(hash);
+            } catch (IOException e) {
+                log.warn("Could not delete orphaned blob {}: {}", hash, e.getMessage());
+                return 0L;
+            }
+        });
+        return freed == null ? 0 : freed;
+    }
+
+    private long collectFile(String fileName, long size) throws IOException {
+        if (!FileStorageService.isContentAddressed(fileName)
+                && parcelRepository.existsByImagePath(FileStorageService.IMAGE_PATH_PREFIX + fileName)) {
+            return 0;
+        }
+        blobStore.delete(fileName);
+        return size;
+    }
+
+    private static String fileName(String imagePath) {
+        return imagePath.substring(imagePath.lastIndexOf('/') + 1);
+    }
+
+    // One run's progress through the store
+    private final class Run {
+        final ReferenceSet references;
+        final Instant cutoff;
+        final long startedNanos;
+        int examined;
+        long deletedFiles;
+        long reclaimedBytes;
+
+        Run(ReferenceSet references, Instant cutoff, long startedNanos) {
+            this.references = references;
+            this.cutoff = cutoff;
+            this.startedNanos = startedNanos;
+        }
+
+        // False when the I/O budget ran out before the end of the leaf
+        boolean sweep(String leaf) throws IOException, InterruptedException {
+            for (BlobStore.StoredObject object : blobStore.list(leaf)) {
+                if (examined >= ioBudget) {
+                    return false;
+                }
+                examined++;
+                scanned.increment();
+                examine(object);
+                throttle();
+            }
+            return true;
+        }
+
+        private void examine(BlobStore.StoredObject object) throws IOException {
+            String fileName = object.key();
+            // A variant lives and dies with its original
+            String base = FileStorageService.isContentAddressed(fileName) ? fileName.substring(0, 64) : fileName;
+            if (references.contains(base) || object.lastModified().isAfter(cutoff)) {
+                return;
+            }
+            long freed = FileStorageService.isHash(fileName)
+                    ? collectBlob(fileName, object.size())
+                    : collectFile(fileName, object.size());
+            if (freed > 0) {
+                deletedFiles++;
+                reclaimedBytes += freed;
+                deleted.increment();
+                reclaimed.increment(freed);
+                log.debug("Collected orphaned upload {} ({} bytes)", fileName, freed);
+            }
+        }
+
+        // Sleeps whenever the run is ahead of filesPerSecond
+        private void throttle() throws InterruptedException {
+            long dueNanos = startedNanos + examined * TimeUnit.SECONDS.toNanos(1) / filesPerSecond;
+            long aheadNanos = dueNanos - System.nanoTime();
+            if (aheadNanos > TimeUnit.MILLISECONDS.toNanos(10)) {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            }
+        }
+    }
+
+    /**
+     * Referenced file names as a sorted array of 64-bit keys: the leading 16 hex digits of a
+     * content hash, or the first 8 bytes of the SHA-256 of any other name.
+     */
+    static final class ReferenceSet {
+
+        private final long[] keys;
+
+        private ReferenceSet(long[] keys) {
+            this.keys = keys;
+        }
+
+        boolean contains(String fileName) {
+            return Arrays.binarySearch(keys, key(fileName)) >= 0;
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        static long key(String fileName) {
+            if (FileStorageService.isHash(fileName)) {
+                return Long.parseUnsignedLong(fileName.substring(0, 16), 16);
+            }
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(fileName.getBytes(StandardCharsets.UTF_8));
+                return ByteBuffer.wrap(digest).getLong();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static final class Builder {
+            private long[] keys = new long[1024];
+            private int size;
+
+            void add(String fileName) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                }
+                keys[size++] = key(fileName);
+            }
+
+            ReferenceSet build() {
+                long[] sorted = Arrays.copyOf(keys, size);
+                Arrays.sort(sorted);
+                // Images shared by several parcels appear once
+                int distinct = 0;
+                for (int i = 0; i < sorted.length; i++) {
+                    if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                        sorted[distinct++] = sorted[i];
+                    }
+                }
+                return new ReferenceSet(Arrays.copyOf(sorted, distinct));
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.pms.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.pms.parcelServiceImple.LocalBlobStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves uploads from the old flat directory into the sharded layout, in the background while the
+ * server keeps serving. Each file is moved with a rename and {@link LocalBlobStore} looks in
+ * both places, so a file is readable throughout. The run is idempotent: it only walks what is
+ * still flat, so an interrupted migration simply continues on the next start. Only the local
+ * store has a flat layout to migrate.
+ *
+ * Meter: parcel.uploads.migrated{result} (moved, duplicate, failed).
+ */
+@Service
+@ConditionalOnProperty(name = "file.storage.type", havingValue = "local", matchIfMissing = true)
+@Slf4j
+public class UploadShardMigrator {
+
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    private final LocalBlobStore blobStore;
+    private final boolean migrateOnStartup;
+    private final int filesPerSecond;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Counter moved;
+    private final Counter duplicates;
+    private final Counter failed;
+
+    public UploadShardMigrator(LocalBlobStore blobStore,
+                               @Value("${file.upload-sharding.migrate-on-startup:true}") boolean migrateOnStartup,
+                               @Value("${file.upload-sharding.files-per-second:500}") int filesPerSecond,
+                               MeterRegistry meterRegistry) {
+        this.blobStore = blobStore;
+        this.migrateOnStartup = migrateOnStartup;
+        this.filesPerSecond = Math.max(1, filesPerSecond);
+        this.moved = Counter.builder("parcel.uploads.migrated").tag("result", "moved").register(meterRegistry);
+        this.duplicates = Counter.builder("parcel.uploads.migrated").tag("result", "duplicate").register(meterRegistry);
+        this.failed = Counter.builder("parcel.uploads.migrated").tag("result", "failed").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (!migrateOnStartup) {
+            return;
+        }
+        Thread worker = new Thread(this::migrate, "upload-shard-migrator");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Migrates every file left in the flat layout, throttled to the configured rate so the disk
+     * stays available to uploads and image requests.
+     *
+     * @return files moved, or -1 when a migration is already running
+     */
+    public long migrate() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        long started = System.nanoTime();
+        long seen = 0;
+        long movedHere = 0;
+        try (DirectoryStream<Path> files = blobStore.flatDirectory()) {
+            for (Path file : files) {
+                // Shard directories and .tmp
+                if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                try {
+                    if (blobStore.moveToShard(file,
+                            FileStorageService.isContentAddressed(file.getFileName().toString()))) {
+                        moved.increment();
+                        movedHere++;
+                    } else {
+                        duplicates.increment();
+                    }
+                } catch (IOException e) {
+                    failed.increment();
+                    log.warn("Could not migrate {}: {}", file.getFileName(), e.getMessage());
+                }
+                seen++;
+                if (seen % PROGRESS_INTERVAL == 0) {
+                    log.info("Upload shard migration: {} files processed", seen);
+                }
+                throttle(started, seen);
+            }
+            if (seen > 0) {
+                log.info("Upload shard migration finished: {} of {} files moved in {} s", movedHere, seen,
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+            }
+        } catch (IOException e) {
+            log.error("Upload shard migration stopped: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Upload shard migration interrupted after {} files", seen);
+        } finally {
+            running.set(false);
+        }
+        return movedHere;
+    }
+
+    // Sleeps whenever the run is ahead of filesPerSecond
+    private void throttle(long startedNanos, long processed) throws InterruptedException {
+        long dueNanos = startedNanos + processed * TimeUnit.SECONDS.toNanos(1) / filesPerSecond;
+        long aheadNanos = dueNanos - System.nanoTime();
+        if (aheadNanos > TimeUnit.MILLISECONDS.toNanos(10)) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+}
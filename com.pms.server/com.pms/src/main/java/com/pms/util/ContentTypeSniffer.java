@@ -0,0 +1,68 @@
+package com.pms.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Detects the type of an upload from its leading bytes rather than trusting the client's
+ * Content-Type header, so what we later serve (with nosniff) is what the bytes really are.
+ */
+public final class ContentTypeSniffer {
+
+    /** Bytes needed to recognise every supported type. */
+    public static final int HEAD_LENGTH = 16;
+
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    private ContentTypeSniffer() {
+    }
+
+    /**
+     * @return the detected type, or application/octet-stream when the bytes are not recognised
+     */
+    public static String detect(byte[] head, int length) {
+        if (startsWith(head, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 'R', 'I', 'F', 'F') && length >= 12 && ascii(head, 8, 4).equals("WEBP")) {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 'B', 'M')) {
+            return "image/bmp";
+        }
+        if (length >= 12 && ascii(head, 4, 4).equals("ftyp")) {
+            String brand = ascii(head, 8, 4);
+            if (brand.startsWith("heic") || brand.startsWith("heix") || brand.startsWith("mif1")) {
+                return "image/heic";
+            }
+            if (brand.startsWith("avif")) {
+                return "image/avif";
+            }
+        }
+        if (startsWith(head, length, '%', 'P', 'D', 'F', '-')) {
+            return "application/pdf";
+        }
+        return OCTET_STREAM;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String ascii(byte[] head, int offset, int length) {
+        return new String(head, offset, length, StandardCharsets.US_ASCII);
+    }
+}
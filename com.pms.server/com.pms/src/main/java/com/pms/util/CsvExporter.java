@@ -0,0 +1,367 @@
+package com.pms.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import org.springframework.stereotype.Component;
+
+import com.pms.entity.Parcel;
+import com.pms.entity.ParcelTombstone;
+
+/**
+ * RFC 4180 CSV export. The header uses the entity field names and dates are ISO-8601 instants
+ * (same text as {@link Instant#toString()}), so a file exported here can be fed back to the bulk
+ * CSV ingest endpoint unchanged (version and lastModifiedAt are ignored there). Delta exports end
+ * with one row per deleted parcel: id, trackingNumber, status DELETED, version and lastModifiedAt.
+ *
+ * Rows are encoded straight into a reusable byte buffer: strings are UTF-8 encoded char by char,
+ * numbers and dates are written digit by digit and the "yyyy-MM-ddT" prefix is cached per day,
+ * so no String, formatter or encoder objects are created per cell.
+ */
+@Component
+public class CsvExporter implements ParcelExportFormat {
+
+    static final String[] HEADERS = {
+        "id", "senderName", "recipientName", "recipientEmail", "trackingNumber", "status",
+        "receivedAt", "deliveredAt", "estimatedDeliveryAt", "originCity", "destinationCity",
+        "shippingCost", "additionalFees", "totalValue", "paymentMethod", "parcelType", "weightCategory",
+        "version", "lastModifiedAt"
+    };
+
+    // Status written for deleted parcels in delta exports
+    static final String DELETED = "DELETED";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public String getContentType() {
+        return "text/csv;charset=UTF-8";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "csv";
+    }
+
+    @Override
+    public ParcelRowWriter open(OutputStream out) throws IOException {
+        return new CsvRowWriter(out, true);
+    }
+
+    /**
+     * Writer for one partition of a parallel export: same rows as {@link #open}, header optional,
+     * so concatenating the partitions in order gives exactly the sequential output.
+     */
+    public ParcelRowWriter openPart(OutputStream out, boolean header) throws IOException {
+        return new CsvRowWriter(out, header);
+    }
+
+    static final class CsvRowWriter implements ParcelRowWriter {
+
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        // Cached "yyyy-MM-ddT" for the last day written; exports are id ordered, so dates cluster
+        private final byte[] dayPrefix = new byte[11];
+        private long cachedEpochDay = Long.MIN_VALUE;
+
+        CsvRowWriter(OutputStream out, boolean header) throws IOException {
+            this.out = out;
+            if (header) {
+                for (int i = 0; i < HEADERS.length; i++) {
+                    if (i > 0) {
+                        put((byte) ',');
+                    }
+                    text(HEADERS[i]);
+                }
+                newLine();
+            }
+        }
+
+        @Override
+        public void write(Parcel parcel) throws IOException {
+            if (parcel.getId() != null) {
+                number(parcel.getId());
+            }
+            separator();
+            text(parcel.getSenderName());
+            separator();
+            text(parcel.getRecipientName());
+            separator();
+            text(parcel.getRecipientEmail());
+            separator();
+            text(parcel.getTrackingNumber());
+            separator();
+            if (parcel.getStatus() != null) {
+                text(parcel.getStatus().name());
+            }
+            separator();
+            instant(parcel.getReceivedAt());
+            separator();
+            instant(parcel.getDeliveredAt());
+            separator();
+            instant(parcel.getEstimatedDeliveryAt());
+            separator();
+            text(parcel.getOriginCity());
+            separator();
+            text(parcel.getDestinationCity());
+            separator();
+            decimal(parcel.getShippingCost());
+            separator();
+            decimal(parcel.getAdditionalFees());
+            separator();
+            decimal(parcel.getTotalValue());
+            separator();
+            text(parcel.getPaymentMethod());
+            separator();
+            text(parcel.getParcelType());
+            separator();
+            text(parcel.getWeightCategory());
+            separator();
+            number(parcel.getVersion());
+            separator();
+            instant(parcel.getLastModifiedAt());
+            newLine();
+        }
+
+        // Same columns as a row: id, trackingNumber, status DELETED, version and the deletion time
+        @Override
+        public void writeDeleted(ParcelTombstone tombstone) throws IOException {
+            number(tombstone.getParcelId());
+            for (int column = 1; column < HEADERS.length; column++) {
+                separator();
+                switch (column) {
+                    case 4 -> text(tombstone.getTrackingNumber());
+                    case 5 -> text(DELETED);
+                    case 17 -> number(tombstone.getVersion());
+                    case 18 -> instant(tombstone.getDeletedAt());
+                    default -> {
+                        // Left empty
+                    }
+                }
+            }
+            newLine();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Flush only: the caller owns the output stream
+            flush();
+        }
+
+        private void separator() throws IOException {
+            put((byte) ',');
+        }
+
+        private void newLine() throws IOException {
+            put((byte) '\r');
+            put((byte) '\n');
+        }
+
+        private void text(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = needsQuoting(value);
+            if (quote) {
+                put((byte) '"');
+            }
+            for (int i = 0, n = value.length(); i < n; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    if (c == '"') {
+                        put((byte) '"');
+                    }
+                    put((byte) c);
+                } else if (c < 0x800) {
+                    put((byte) (0xC0 | (c >> 6)));
+                    put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    put((byte) (0xF0 | (cp >> 18)));
+                    put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    put((byte) (0x80 | (cp & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired surrogate: same replacement as the JDK encoder
+                    put((byte) '?');
+                } else {
+                    put((byte) (0xE0 | (c >> 12)));
+                    put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+            if (quote) {
+                put((byte) '"');
+            }
+        }
+
+        private static boolean needsQuoting(String value) {
+            for (int i = 0, n = value.length(); i < n; i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void number(long value) throws IOException {
+            if (value < 0) {
+                put((byte) '-');
+                if (value == Long.MIN_VALUE) {
+                    text("9223372036854775808");
+                    return;
+                }
+                value = -value;
+            }
+            digits(value, 1);
+        }
+
+        // Writes value in decimal, left-padded with zeros to at least minDigits
+        private void digits(long value, int minDigits) throws IOException {
+            int length = 1;
+            for (long v = value; v >= 10; v /= 10) {
+                length++;
+            }
+            for (int pad = minDigits - length; pad > 0; pad--) {
+                put((byte) '0');
+            }
+            ensure(length);
+            for (int i = position + length - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position += length;
+        }
+
+        // Same text as BigDecimal.toPlainString(); money values always take the compact path
+        private void decimal(BigDecimal value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            int scale = value.scale();
+            if (scale < 0 || scale > 18 || value.precision() > 18) {
+                text(value.toPlainString());
+                return;
+            }
+            long unscaled = value.unscaledValue().longValue();
+            if (unscaled < 0) {
+                put((byte) '-');
+                unscaled = -unscaled;
+            }
+            long pow = POWERS_OF_TEN[scale];
+            digits(unscaled / pow, 1);
+            if (scale > 0) {
+                put((byte) '.');
+                digits(unscaled % pow, scale);
+            }
+        }
+
+        // Same text as Instant.toString() for years 0000-9999
+        private void instant(Instant instant) throws IOException {
+            if (instant == null) {
+                return;
+            }
+            long seconds = instant.getEpochSecond();
+            long epochDay = Math.floorDiv(seconds, 86_400);
+            int secondOfDay = (int) Math.floorMod(seconds, 86_400);
+            if (epochDay != cachedEpochDay) {
+                if (!cacheDay(epochDay)) {
+                    text(instant.toString());
+                    return;
+                }
+            }
+            ensure(dayPrefix.length);
+            System.arraycopy(dayPrefix, 0, buffer, position, dayPrefix.length);
+            position += dayPrefix.length;
+
+            digits(secondOfDay / 3600, 2);
+            put((byte) ':');
+            digits((secondOfDay / 60) % 60, 2);
+            put((byte) ':');
+            digits(secondOfDay % 60, 2);
+            int nano = instant.getNano();
+            if (nano > 0) {
+                put((byte) '.');
+                if (nano % 1_000_000 == 0) {
+                    digits(nano / 1_000_000, 3);
+                } else if (nano % 1_000 == 0) {
+                    digits(nano / 1_000, 6);
+                } else {
+                    digits(nano, 9);
+                }
+            }
+            put((byte) 'Z');
+        }
+
+        // Civil-from-days (proleptic Gregorian); returns false outside 0000-9999
+        private boolean cacheDay(long epochDay) {
+            long z = epochDay + 719_468;
+            long era = Math.floorDiv(z, 146_097);
+            long doe = z - era * 146_097;
+            long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+            long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+            long mp = (5 * doy + 2) / 153;
+            long day = doy - (153 * mp + 2) / 5 + 1;
+            long month = mp < 10 ? mp + 3 : mp - 9;
+            long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+            if (year < 0 || year > 9999) {
+                return false;
+            }
+            fill(dayPrefix, 0, year, 4);
+            dayPrefix[4] = '-';
+            fill(dayPrefix, 5, month, 2);
+            dayPrefix[7] = '-';
+            fill(dayPrefix, 8, day, 2);
+            dayPrefix[10] = 'T';
+            cachedEpochDay = epochDay;
+            return true;
+        }
+
+        private static void fill(byte[] target, int offset, long value, int width) {
+            for (int i = offset + width - 1; i >= offset; i--) {
+                target[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+
+        private void put(byte b) throws IOException {
+            if (position == buffer.length) {
+                drain();
+            }
+            buffer[position++] = b;
+        }
+
+        private void ensure(int length) throws IOException {
+            if (position + length > buffer.length) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+    }
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+}
@@ -1,92 +1,185 @@
 package com.pms.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.stereotype.Component;
 
 import com.pms.entity.Parcel;
+import com.pms.entity.ParcelTombstone;
 
-import jakarta.servlet.http.HttpServletResponse;
-
+/**
+ * Streams parcels into an .xlsx using POI's sliding-window SXSSF workbook: only the last
+ * {@value #ROW_WINDOW} rows stay in heap, older rows are flushed to a compressed temp file.
+ * Column widths come from the header and the first {@value #WIDTH_SAMPLE_ROWS} rows instead
+ * of autoSizeColumn, which would need every row in memory. Parcels deleted inside a delta
+ * export's window go to a second "Deleted" sheet.
+ */
 @Component  // Add this annotation
-public class ExcelExporter {
-
-    public void export(List<Parcel> parcels, HttpServletResponse response) throws IOException {
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Parcels");
-        
-        // Create header row
-        Row headerRow = sheet.createRow(0);
-        String[] headers = {
-            "ID", "Sender", "Recipient", "Recipient Email", "Tracking Number",
-            "Received At", "Delivered At", "Estimated Delivery",
-            "Origin", "Destination", "Status", "Shipping Cost",
-            "Additional Fees", "Total Value", "Payment Method",
-            "Parcel Type", "Weight Category"
-        };
-        
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-        
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
+public class ExcelExporter implements ParcelExportFormat {
+
+    private static final int ROW_WINDOW = 100;
+    private static final int WIDTH_SAMPLE_ROWS = 500;
+    private static final int MAX_COLUMN_CHARS = 60;
+
+    private static final DateTimeFormatter DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    private static final String[] HEADERS = {
+        "ID", "Sender", "Recipient", "Recipient Email", "Tracking Number",
+        "Received At", "Delivered At", "Estimated Delivery",
+        "Origin", "Destination", "Status", "Shipping Cost",
+        "Additional Fees", "Total Value", "Payment Method",
+        "Parcel Type", "Weight Category", "Version", "Last Modified"
+    };
+
+    private static final String[] DELETED_HEADERS = {"ID", "Tracking Number", "Version", "Deleted At"};
+
+    @Override
+    public String getContentType() {
+        return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "xlsx";
+    }
+
+    @Override
+    public ParcelRowWriter open(OutputStream out) {
+        return new SheetWriter(out);
+    }
+
+    private static final class SheetWriter implements ParcelRowWriter {
+
+        private final OutputStream out;
+        private final SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        private final SXSSFSheet sheet;
+        private final int[] widths = new int[HEADERS.length];
+        private int rowNum = 1;
+        private SXSSFSheet deletedSheet;
+        private int deletedRowNum = 1;
+
+        SheetWriter(OutputStream out) {
+            this.out = out;
+            workbook.setCompressTempFiles(true);
+            sheet = workbook.createSheet("Parcels");
+
+            // Create header row
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font headerFont = workbook.createFont();
+            headerFont.setBold(true);
+            headerStyle.setFont(headerFont);
+
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < HEADERS.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(HEADERS[i]);
+                cell.setCellStyle(headerStyle);
+                widths[i] = HEADERS[i].length();
+            }
         }
-        
-        // Create data rows
-        int rowNum = 1;
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        
-        for (Parcel parcel : parcels) {
-            Row row = sheet.createRow(rowNum++);
-            
-            row.createCell(0).setCellValue(parcel.getId());
-            row.createCell(1).setCellValue(parcel.getSenderName());
-            row.createCell(2).setCellValue(parcel.getRecipientName());
-            row.createCell(3).setCellValue(parcel.getRecipientEmail());
-            row.createCell(4).setCellValue(parcel.getTrackingNumber());
-            
-            if (parcel.getReceivedAt() != null) {
-                row.createCell(5).setCellValue(formatter.format(parcel.getReceivedAt()));
+
+        @Override
+        public void write(Parcel parcel) {
+            Row row = sheet.createRow(rowNum);
+            String[] text = writeRow(row, parcel);
+            if (rowNum <= WIDTH_SAMPLE_ROWS) {
+                for (int i = 0; i < text.length; i++) {
+                    if (text[i] != null) {
+                        widths[i] = Math.max(widths[i], text[i].length());
+                    }
+                }
             }
-            
-            if (parcel.getDeliveredAt() != null) {
-                row.createCell(6).setCellValue(formatter.format(parcel.getDeliveredAt()));
+            rowNum++;
+        }
+
+        @Override
+        public void writeDeleted(ParcelTombstone tombstone) {
+            if (deletedSheet == null) {
+                deletedSheet = workbook.createSheet("Deleted");
+                Row headerRow = deletedSheet.createRow(0);
+                for (int i = 0; i < DELETED_HEADERS.length; i++) {
+                    headerRow.createCell(i).setCellValue(DELETED_HEADERS[i]);
+                    deletedSheet.setColumnWidth(i, 22 * 256);
+                }
             }
-            
-            if (parcel.getEstimatedDeliveryAt() != null) {
-                row.createCell(7).setCellValue(formatter.format(parcel.getEstimatedDeliveryAt()));
+            Row row = deletedSheet.createRow(deletedRowNum++);
+            row.createCell(0).setCellValue(tombstone.getParcelId());
+            setText(row, 1, tombstone.getTrackingNumber());
+            row.createCell(2).setCellValue(tombstone.getVersion());
+            setText(row, 3, format(tombstone.getDeletedAt()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                for (int i = 0; i < HEADERS.length; i++) {
+                    sheet.setColumnWidth(i, (Math.min(widths[i], MAX_COLUMN_CHARS) + 2) * 256);
+                }
+                workbook.write(out);
+            } finally {
+                // Also deletes the temp files backing the flushed rows
+                workbook.close();
             }
-            
-            row.createCell(8).setCellValue(parcel.getOriginCity());
-            row.createCell(9).setCellValue(parcel.getDestinationCity());
-            row.createCell(10).setCellValue(parcel.getStatus().toString());
-            row.createCell(11).setCellValue(parcel.getShippingCost().doubleValue());
-            row.createCell(12).setCellValue(parcel.getAdditionalFees().doubleValue());
-            row.createCell(13).setCellValue(parcel.getTotalValue().doubleValue());
-            row.createCell(14).setCellValue(parcel.getPaymentMethod());
-            row.createCell(15).setCellValue(parcel.getParcelType());
-            row.createCell(16).setCellValue(parcel.getWeightCategory());
         }
-        
-        // Auto-size columns
-        for (int i = 0; i < headers.length; i++) {
-            sheet.autoSizeColumn(i);
+    }
+
+    // Returns the text of each cell so the caller can size columns without re-reading the row
+    private static String[] writeRow(Row row, Parcel parcel) {
+        String[] text = new String[HEADERS.length];
+        if (parcel.getId() != null) {
+            row.createCell(0).setCellValue(parcel.getId());
+            text[0] = parcel.getId().toString();
         }
-        
-        workbook.write(response.getOutputStream());
-        workbook.close();
+        text[1] = setText(row, 1, parcel.getSenderName());
+        text[2] = setText(row, 2, parcel.getRecipientName());
+        text[3] = setText(row, 3, parcel.getRecipientEmail());
+        text[4] = setText(row, 4, parcel.getTrackingNumber());
+        text[5] = setText(row, 5, format(parcel.getReceivedAt()));
+        text[6] = setText(row, 6, format(parcel.getDeliveredAt()));
+        text[7] = setText(row, 7, format(parcel.getEstimatedDeliveryAt()));
+        text[8] = setText(row, 8, parcel.getOriginCity());
+        text[9] = setText(row, 9, parcel.getDestinationCity());
+        text[10] = setText(row, 10, parcel.getStatus() != null ? parcel.getStatus().toString() : null);
+        text[11] = setNumber(row, 11, parcel.getShippingCost());
+        text[12] = setNumber(row, 12, parcel.getAdditionalFees());
+        text[13] = setNumber(row, 13, parcel.getTotalValue());
+        text[14] = setText(row, 14, parcel.getPaymentMethod());
+        text[15] = setText(row, 15, parcel.getParcelType());
+        text[16] = setText(row, 16, parcel.getWeightCategory());
+        row.createCell(17).setCellValue(parcel.getVersion());
+        text[17] = Long.toString(parcel.getVersion());
+        text[18] = setText(row, 18, format(parcel.getLastModifiedAt()));
+        return text;
+    }
+
+    private static String setText(Row row, int column, String value) {
+        if (value != null) {
+            row.createCell(column).setCellValue(value);
+        }
+        return value;
+    }
+
+    private static String setNumber(Row row, int column, BigDecimal value) {
+        if (value == null) {
+            return null;
+        }
+        row.createCell(column).setCellValue(value.doubleValue());
+        return value.toPlainString();
+    }
+
+    private static String format(Instant instant) {
+        return instant != null ? DATE_FORMATTER.format(instant) : null;
     }
-}
\ No newline at end of file
+}
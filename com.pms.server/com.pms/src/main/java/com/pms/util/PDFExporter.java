@@ -6,85 +6,173 @@ import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
 import com.pms.entity.Parcel;
-import jakarta.servlet.http.HttpServletResponse;
+import com.pms.entity.ParcelTombstone;
 
 import java.awt.*;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
-import java.util.List;
 import java.util.Locale;
 import org.springframework.stereotype.Component;
 
+/**
+ * Streams parcels into a PDF table. The table is marked incomplete and handed to the document
+ * every {@value #ROWS_PER_FLUSH} rows, which renders those rows, writes finished pages to the
+ * output and drops them from the table, so memory stays constant however many rows are exported.
+ * The header row repeats on every page. Parcels deleted inside a delta export's window follow in
+ * a second table, streamed the same way.
+ */
 @Component
-public class PDFExporter {
-
-    public void export(List<Parcel> parcels, HttpServletResponse response) throws IOException {
-        Document document = new Document(PageSize.A4.rotate());
-        PdfWriter.getInstance(document, response.getOutputStream());
-        
-        document.open();
-        
-        // Create title
-        Font titleFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18, Color.BLUE);
-        Paragraph title = new Paragraph("PARCELS REPORT", titleFont);
-        title.setAlignment(Element.ALIGN_CENTER);
-        document.add(title);
-        
-        // Create table
-        PdfPTable table = new PdfPTable(10);
-        table.setWidthPercentage(100f);
-        table.setWidths(new float[] {1.0f, 2.0f, 2.0f, 3.0f, 2.5f, 2.0f, 2.0f, 2.0f, 2.0f, 2.0f});
-        table.setSpacingBefore(10);
-        
-        // Header cells
-        PdfPCell cell = new PdfPCell();
-        cell.setBackgroundColor(Color.BLUE);
-        cell.setPadding(5);
-        cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-        
-        Font headerFont = FontFactory.getFont(FontFactory.HELVETICA, 12, Color.WHITE);
-        
-        // Add headers
-        String[] headers = {
-            "ID", "Sender", "Recipient", "Tracking #", "Status", 
-            "Origin", "Destination", "Received At", "Shipping Cost", "Total Value"
-        };
-        
-        for (String header : headers) {
-            cell.setPhrase(new Phrase(header, headerFont));
-            table.addCell(cell);
+public class PDFExporter implements ParcelExportFormat {
+
+    private static final int ROWS_PER_FLUSH = 200;
+
+    // Fonts are immutable once built; sharing them avoids a FontFactory lookup per export
+    private static final Font TITLE_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18, Color.BLUE);
+    private static final Font HEADER_FONT = FontFactory.getFont(FontFactory.HELVETICA, 12, Color.WHITE);
+    private static final Font DATA_FONT = FontFactory.getFont(FontFactory.HELVETICA, 10);
+
+    private static final String[] HEADERS = {
+        "ID", "Sender", "Recipient", "Tracking #", "Status",
+        "Origin", "Destination", "Received At", "Shipping Cost", "Total Value"
+    };
+    private static final float[] WIDTHS = {1.0f, 2.0f, 2.0f, 3.0f, 2.5f, 2.0f, 2.0f, 2.0f, 2.0f, 2.0f};
+    private static final String[] DELETED_HEADERS = {"ID", "Tracking #", "Version", "Deleted At"};
+
+    // Date formatter for Instant
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT)
+        .withLocale(Locale.getDefault())
+        .withZone(ZoneId.systemDefault());
+
+    @Override
+    public String getContentType() {
+        return "application/pdf";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "pdf";
+    }
+
+    @Override
+    public ParcelRowWriter open(OutputStream out) {
+        return new TableWriter(out);
+    }
+
+    private static final class TableWriter implements ParcelRowWriter {
+
+        private final OutputStream out;
+        private final Document document = new Document(PageSize.A4.rotate());
+        private PdfPTable table;
+        private boolean deletedSection;
+        private int pendingRows;
+
+        TableWriter(OutputStream out) {
+            this.out = out;
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            // The caller owns the output stream
+            writer.setCloseStream(false);
+            document.open();
+
+            // Create title
+            Paragraph title = new Paragraph("PARCELS REPORT", TITLE_FONT);
+            title.setAlignment(Element.ALIGN_CENTER);
+            document.add(title);
+
+            table = newTable(HEADERS, WIDTHS);
+        }
+
+        // Incomplete table so document.add renders and releases rows as they come
+        private static PdfPTable newTable(String[] headers, float[] widths) {
+            PdfPTable table = new PdfPTable(headers.length);
+            table.setWidthPercentage(100f);
+            table.setWidths(widths);
+            table.setSpacingBefore(10);
+            table.setComplete(false);
+            table.setHeaderRows(1);
+
+            // Header cells
+            PdfPCell cell = new PdfPCell();
+            cell.setBackgroundColor(Color.BLUE);
+            cell.setPadding(5);
+            cell.setHorizontalAlignment(Element.ALIGN_CENTER);
+
+            for (String header : headers) {
+                cell.setPhrase(new Phrase(header, HEADER_FONT));
+                table.addCell(cell);
+            }
+            return table;
         }
-        
-        // Date formatter for Instant
-        DateTimeFormatter formatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT)
-            .withLocale(Locale.getDefault())
-            .withZone(ZoneId.systemDefault());
-        
-        // Data cells
-        Font dataFont = FontFactory.getFont(FontFactory.HELVETICA, 10);
-        
-        for (Parcel parcel : parcels) {
-            table.addCell(new Phrase(String.valueOf(parcel.getId()), dataFont));
-            table.addCell(new Phrase(parcel.getSenderName(), dataFont));
-            table.addCell(new Phrase(parcel.getRecipientName(), dataFont));
-            table.addCell(new Phrase(parcel.getTrackingNumber(), dataFont));
-            table.addCell(new Phrase(parcel.getStatus().toString(), dataFont));
-            table.addCell(new Phrase(parcel.getOriginCity(), dataFont));
-            table.addCell(new Phrase(parcel.getDestinationCity(), dataFont));
-            
+
+        @Override
+        public void write(Parcel parcel) {
+            // addCell(Phrase) copies the table's default cell, which serves as the data cell template
+            table.addCell(new Phrase(String.valueOf(parcel.getId()), DATA_FONT));
+            table.addCell(new Phrase(parcel.getSenderName(), DATA_FONT));
+            table.addCell(new Phrase(parcel.getRecipientName(), DATA_FONT));
+            table.addCell(new Phrase(parcel.getTrackingNumber(), DATA_FONT));
+            table.addCell(new Phrase(String.valueOf(parcel.getStatus()), DATA_FONT));
+            table.addCell(new Phrase(parcel.getOriginCity(), DATA_FONT));
+            table.addCell(new Phrase(parcel.getDestinationCity(), DATA_FONT));
+
             // Format Instant dates properly
-            String receivedAt = parcel.getReceivedAt() != null 
-                ? formatter.format(parcel.getReceivedAt())
+            String receivedAt = parcel.getReceivedAt() != null
+                ? FORMATTER.format(parcel.getReceivedAt())
                 : "N/A";
-            table.addCell(new Phrase(receivedAt, dataFont));
-            
-            table.addCell(new Phrase(parcel.getShippingCost().toString(), dataFont));
-            table.addCell(new Phrase(parcel.getTotalValue().toString(), dataFont));
+            table.addCell(new Phrase(receivedAt, DATA_FONT));
+
+            table.addCell(new Phrase(String.valueOf(parcel.getShippingCost()), DATA_FONT));
+            table.addCell(new Phrase(String.valueOf(parcel.getTotalValue()), DATA_FONT));
+
+            if (++pendingRows == ROWS_PER_FLUSH) {
+                flushTable();
+            }
+        }
+
+        @Override
+        public void writeDeleted(ParcelTombstone tombstone) {
+            if (!deletedSection) {
+                // Close the parcels table and start the deleted one
+                table.setComplete(true);
+                document.add(table);
+                Paragraph title = new Paragraph("DELETED PARCELS", TITLE_FONT);
+                title.setSpacingBefore(20);
+                document.add(title);
+                table = newTable(DELETED_HEADERS, new float[] {1.0f, 3.0f, 1.0f, 2.0f});
+                deletedSection = true;
+                pendingRows = 0;
+            }
+            table.addCell(new Phrase(String.valueOf(tombstone.getParcelId()), DATA_FONT));
+            table.addCell(new Phrase(tombstone.getTrackingNumber(), DATA_FONT));
+            table.addCell(new Phrase(String.valueOf(tombstone.getVersion()), DATA_FONT));
+            table.addCell(new Phrase(FORMATTER.format(tombstone.getDeletedAt()), DATA_FONT));
+
+            if (++pendingRows == ROWS_PER_FLUSH) {
+                flushTable();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushTable();
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            table.setComplete(true);
+            document.add(table);
+            document.close();
+        }
+
+        private void flushTable() {
+            if (pendingRows > 0) {
+                // Renders the buffered rows and removes them from the table
+                document.add(table);
+                pendingRows = 0;
+            }
         }
-        
-        document.add(table);
-        document.close();
     }
-}
\ No newline at end of file
+}
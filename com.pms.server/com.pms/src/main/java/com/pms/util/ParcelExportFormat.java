@@ -0,0 +1,17 @@
+package com.pms.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An export file format (Excel, PDF, CSV). Implementations are stateless singletons; each
+ * export gets its own {@link ParcelRowWriter} from {@link #open}.
+ */
+public interface ParcelExportFormat {
+
+    String getContentType();
+
+    String getFileExtension();
+
+    ParcelRowWriter open(OutputStream out) throws IOException;
+}
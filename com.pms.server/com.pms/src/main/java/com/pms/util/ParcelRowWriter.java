@@ -0,0 +1,30 @@
+package com.pms.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.pms.entity.Parcel;
+import com.pms.entity.ParcelTombstone;
+
+/**
+ * One export in progress: receives parcels in order and renders them to the output it was
+ * opened on. {@link #close()} writes any trailer (workbook, PDF table end) but never closes
+ * the underlying output stream.
+ */
+public interface ParcelRowWriter extends Closeable {
+
+    void write(Parcel parcel) throws IOException;
+
+    /**
+     * Called by the row source at chunk boundaries so formats that can stream push what they
+     * have rendered so far to the client.
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Delta exports only: a parcel deleted inside the export window, written after all rows.
+     * Abstract so every format, and every wrapper around one, has to handle it.
+     */
+    void writeDeleted(ParcelTombstone tombstone) throws IOException;
+}
@@ -0,0 +1,109 @@
+package com.pms.parcelServiceImple;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.pms.dto.ParcelDto;
+import com.pms.repository.StoredBlobRepository;
+import com.pms.service.BlobStore;
+import com.pms.service.ParcelService;
+
+/**
+ * Reference counted image storage against the configured database: the stored_blobs row and
+ * the stored file must go once the last parcel using them is gone, or when the create that
+ * stored them rolls back.
+ */
+@SpringBootTest
+class ParcelImageLifecycleTest {
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadProperties(DynamicPropertyRegistry registry) {
+        registry.add("file.upload-dir", uploadDir::toString);
+        registry.add("file.storage.type", () -> "local");
+        registry.add("file.upload-gc.enabled", () -> "false");
+        registry.add("file.upload-sharding.migrate-on-startup", () -> "false");
+    }
+
+    @Autowired
+    private ParcelService parcelService;
+
+    @Autowired
+    private StoredBlobRepository blobRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Test
+    void deletingTheLastParcelRemovesBlobRowAndFile() throws IOException {
+        ParcelDto created = parcelService.createParcelWithImage(parcelWithImage());
+        String hash = fileName(created);
+        assertEquals(1, blobRepository.findById(hash).orElseThrow().getRefCount());
+        assertTrue(blobStore.exists(hash));
+
+        parcelService.deleteParcel(created.getId());
+
+        assertFalse(blobRepository.findById(hash).isPresent());
+        assertFalse(blobStore.exists(hash));
+    }
+
+    @Test
+    void rolledBackCreateLeavesNoBlob() throws IOException {
+        ParcelDto existing = parcelService.createParcelWithImage(new ParcelDto());
+        ParcelDto duplicate = parcelWithImage();
+        duplicate.setTrackingNumber(existing.getTrackingNumber());
+        String hash = sha256(duplicate);
+        try {
+            // The insert violates the unique tracking number after the image reference was added
+            assertThrows(DataIntegrityViolationException.class, () -> parcelService.createParcelWithImage(duplicate));
+
+            assertFalse(blobRepository.findById(hash).isPresent());
+            assertFalse(blobStore.exists(hash));
+        } finally {
+            parcelService.deleteParcel(existing.getId());
+        }
+    }
+
+    // Unique bytes, so the blob is not shared with parcels already in the database
+    private static ParcelDto parcelWithImage() {
+        ParcelDto parcel = new ParcelDto();
+        parcel.setSenderName("Image lifecycle test");
+        parcel.setRecipientName("Image lifecycle test");
+        parcel.setImageFile(new MockMultipartFile("imageFile", "label.txt", "text/plain",
+                ("label " + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8)));
+        return parcel;
+    }
+
+    private static String sha256(ParcelDto parcel) throws IOException {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(parcel.getImageFile().getBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String fileName(ParcelDto parcel) {
+        return parcel.getImagePath().substring(parcel.getImagePath().lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,95 @@
+package com.pms.parcelServiceImple;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class SnowflakeTrackingNumberGeneratorTest {
+
+    private final SnowflakeTrackingNumberGenerator generator = new SnowflakeTrackingNumberGenerator(7);
+
+    @Test
+    void generatedNumbersAreValidAndCheckDigitCatchesTypos() {
+        String number = generator.next();
+        assertEquals(16, number.length());
+        assertTrue(generator.isValid(number));
+        assertTrue(Duration.between(generator.issuedAt(number), Instant.now()).abs().toSeconds() < 5);
+
+        char[] typo = number.toCharArray();
+        typo[5] = typo[5] == '0' ? '1' : '0';
+        assertFalse(generator.isValid(new String(typo)));
+        assertFalse(generator.isValid("PM1A2B3C4D"));
+        assertNull(generator.issuedAt("PM1A2B3C4D"));
+    }
+
+    @Test
+    void concurrentGenerationIsCollisionFreeAndMonotonic() throws Exception {
+        generate(4, 20_000);
+    }
+
+    /**
+     * Sustained rate with 8 threads; run with -Pbenchmark.
+     */
+    @Test
+    @Tag("benchmark")
+    void generationThroughput() throws Exception {
+        long began = System.nanoTime();
+        long ids = generate(8, 500_000);
+        long elapsedNanos = System.nanoTime() - began;
+        log.info("Generated {} tracking numbers on 8 threads in {} ms ({} ids/s), 0 collisions",
+                ids, elapsedNanos / 1_000_000, Math.round(ids * 1e9 / elapsedNanos));
+    }
+
+    // Every id must be unique and strictly increasing within its thread
+    private long generate(int threads, int idsPerThread) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        @SuppressWarnings("unchecked")
+        Future<long[]>[] results = new Future[threads];
+        for (int t = 0; t < threads; t++) {
+            results[t] = pool.submit(() -> {
+                long[] ids = new long[idsPerThread];
+                start.await();
+                for (int i = 0; i < idsPerThread; i++) {
+                    ids[i] = generator.decode(generator.next());
+                }
+                return ids;
+            });
+        }
+
+        start.countDown();
+        long[] all = new long[threads * idsPerThread];
+        try {
+            for (int t = 0; t < threads; t++) {
+                long[] ids = results[t].get();
+                for (int i = 1; i < ids.length; i++) {
+                    assertTrue(ids[i] > ids[i - 1], "ids must increase within a thread");
+                }
+                System.arraycopy(ids, 0, all, t * idsPerThread, idsPerThread);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertTrue(all[i] != all[i - 1], "duplicate id " + all[i]);
+        }
+        return all.length;
+    }
+}
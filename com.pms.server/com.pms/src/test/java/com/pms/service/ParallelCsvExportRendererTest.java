@@ -0,0 +1,175 @@
+package com.pms.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.pms.dto.ExportFilterDTO;
+import com.pms.entity.Parcel;
+import com.pms.util.CsvExporter;
+import com.pms.util.ParcelRowWriter;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class ParallelCsvExportRendererTest {
+
+    private static final int THREADS = 8;
+    private static final long MIN_ID = 1_000;
+
+    @TempDir
+    Path directory;
+
+    private final CsvExporter csvExporter = new CsvExporter();
+    private ThreadPoolTaskExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(THREADS);
+        executor.setMaxPoolSize(THREADS);
+        executor.setQueueCapacity(256);
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void slicesCoverTheIdRangeWithoutGaps() {
+        List<long[]> slices = ParallelCsvExportRenderer.slice(5, 104, 7);
+        assertEquals(5, slices.get(0)[0]);
+        assertEquals(105, slices.get(slices.size() - 1)[1]);
+        for (int i = 1; i < slices.size(); i++) {
+            assertEquals(slices.get(i - 1)[1], slices.get(i)[0]);
+        }
+        assertEquals(1, ParallelCsvExportRenderer.slice(42, 42, 32).size());
+    }
+
+    // Every other id exists, so about 20k rows over many slices
+    @Test
+    void parallelOutputMatchesSequential() throws IOException {
+        SyntheticRowSource rowSource = new SyntheticRowSource(40_000);
+        ParallelCsvExportRenderer renderer = renderer(rowSource);
+        byte[] expected = sequential(rowSource);
+
+        AtomicLong progress = new AtomicLong();
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream(expected.length);
+        long rows = renderer.render(null, parallel, false, progress);
+
+        assertEquals(rowSource.rows(), rows);
+        assertEquals(rows, progress.get());
+        assertArrayEquals(expected, parallel.toByteArray());
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        renderer.render(null, gzip, true, null);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.toByteArray()))) {
+            assertArrayEquals(expected, in.readAllBytes());
+        }
+    }
+
+    /**
+     * Rows/second of sequential and parallel rendering of about 1M synthetic rows; run with
+     * -Pbenchmark.
+     */
+    @Test
+    @Tag("benchmark")
+    void parallelThroughput() throws IOException {
+        SyntheticRowSource rowSource = new SyntheticRowSource(2_000_000);
+        ParallelCsvExportRenderer renderer = renderer(rowSource);
+        // Warm up both paths
+        sequential(rowSource);
+        renderer.render(null, new ByteArrayOutputStream(), false, null);
+
+        long began = System.nanoTime();
+        byte[] expected = sequential(rowSource);
+        long sequentialNanos = System.nanoTime() - began;
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream(expected.length);
+        began = System.nanoTime();
+        long rows = renderer.render(null, parallel, false, null);
+        long parallelNanos = System.nanoTime() - began;
+
+        assertArrayEquals(expected, parallel.toByteArray());
+        log.info("Sequential: {} rows/s, parallel ({} threads): {} rows/s, speedup {}x, {} bytes identical",
+                Math.round(rows * 1e9 / sequentialNanos), THREADS, Math.round(rows * 1e9 / parallelNanos),
+                String.format("%.1f", (double) sequentialNanos / parallelNanos), expected.length);
+    }
+
+    private ParallelCsvExportRenderer renderer(SyntheticRowSource rowSource) throws IOException {
+        return new ParallelCsvExportRenderer(rowSource, csvExporter, executor, directory.toString());
+    }
+
+    private byte[] sequential(SyntheticRowSource rowSource) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParcelRowWriter writer = csvExporter.open(out)) {
+            rowSource.writeAll(null, writer);
+        }
+        return out.toByteArray();
+    }
+
+    // Stands in for the database: parcels exist for every even id in [MIN_ID, maxId]
+    private static final class SyntheticRowSource extends ParcelExportRowSource {
+
+        private final long maxId;
+
+        SyntheticRowSource(long maxId) {
+            super(null, null, 500, 60, 30);
+            this.maxId = maxId;
+        }
+
+        long rows() {
+            return (maxId - MIN_ID) / 2 + 1;
+        }
+
+        @Override
+        public long[] idRange(ExportFilterDTO filterDTO) {
+            return new long[] {MIN_ID, maxId};
+        }
+
+        @Override
+        public long writeRange(ExportFilterDTO filterDTO, Long fromId, Long toId, ParcelRowWriter writer)
+                throws IOException {
+            long from = fromId == null ? MIN_ID : fromId;
+            long to = toId == null ? maxId + 1 : toId;
+            Parcel parcel = new Parcel();
+            parcel.setStatus(Parcel.ParcelStatus.IN_TRANSIT);
+            parcel.setOriginCity("Mumbai");
+            parcel.setShippingCost(new BigDecimal("149.90"));
+            parcel.setTotalValue(new BigDecimal("162.40"));
+            parcel.setParcelType("PACKAGE");
+            long count = 0;
+            for (long id = from + (from & 1); id < to; id += 2) {
+                parcel.setId(id);
+                parcel.setSenderName("Sender " + id);
+                parcel.setTrackingNumber("PM" + (1_000_000_000L + id));
+                parcel.setReceivedAt(Instant.ofEpochSecond(1_700_000_000L + id * 37));
+                parcel.setDestinationCity(id % 3 == 0 ? "Delhi, NCR" : "Bengaluru");
+                writer.write(parcel);
+                if (++count % 500 == 0) {
+                    writer.flush();
+                }
+            }
+            writer.flush();
+            return count;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.pms.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.pms.entity.Parcel;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+class CsvExporterTest {
+
+    private static final int CSV_ROWS = 1_000_000;
+    private static final int EXCEL_ROWS = 100_000;
+
+    private final CsvExporter csvExporter = new CsvExporter();
+    private final ExcelExporter excelExporter = new ExcelExporter();
+
+    @Test
+    void rowsRoundTripThroughCsvReader() throws IOException {
+        Parcel parcel = parcel(42);
+        parcel.setSenderName("M\u00fcller, \"Acme\" GmbH");
+        parcel.setRecipientName("\u674e\u96f7 \uD83D\uDE00");
+        parcel.setDeliveredAt(Instant.parse("1999-12-31T23:59:59.123456Z"));
+        parcel.setEstimatedDeliveryAt(null);
+        parcel.setShippingCost(new BigDecimal("-0.05"));
+        parcel.setTotalValue(new BigDecimal("1E+3"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParcelRowWriter writer = new GzipExportFormat(csvExporter).open(out)) {
+            writer.write(parcel);
+        }
+
+        try (CsvReader reader = new CsvReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), StandardCharsets.UTF_8))) {
+            assertArrayEquals(CsvExporter.HEADERS, reader.readRecord());
+            String[] row = reader.readRecord();
+            assertEquals("42", row[0]);
+            assertEquals(parcel.getSenderName(), row[1]);
+            assertEquals(parcel.getRecipientName(), row[2]);
+            assertEquals(parcel.getTrackingNumber(), row[4]);
+            assertEquals("IN_TRANSIT", row[5]);
+            assertEquals(parcel.getReceivedAt().toString(), row[6]);
+            assertEquals(parcel.getDeliveredAt().toString(), row[7]);
+            assertEquals("", row[8]);
+            assertEquals("-0.05", row[11]);
+            assertEquals("12.50", row[12]);
+            assertEquals("1000", row[13]);
+            assertNull(reader.readRecord());
+        }
+    }
+
+    /**
+     * Rows/second of the CSV writer (plain and gzip) and of the SXSSF Excel writer on the same
+     * synthetic parcels, rendered to a discarding stream; run with -Pbenchmark.
+     */
+    @Test
+    @Tag("benchmark")
+    void csvThroughputAgainstExcel() throws IOException {
+        Parcel[] parcels = new Parcel[1024];
+        for (int i = 0; i < parcels.length; i++) {
+            parcels[i] = parcel(i);
+        }
+
+        // Warm up both paths before timing
+        render(csvExporter, parcels, 50_000);
+        render(excelExporter, parcels, 5_000);
+
+        double csvRate = render(csvExporter, parcels, CSV_ROWS);
+        double gzipRate = render(new GzipExportFormat(csvExporter), parcels, CSV_ROWS);
+        double excelRate = render(excelExporter, parcels, EXCEL_ROWS);
+        log.info("CSV: {} rows/s, CSV gzip: {} rows/s, Excel (SXSSF): {} rows/s, CSV is {}x Excel",
+                Math.round(csvRate), Math.round(gzipRate), Math.round(excelRate),
+                String.format("%.1f", csvRate / excelRate));
+    }
+
+    private static double render(ParcelExportFormat format, Parcel[] parcels, int rows) throws IOException {
+        long started = System.nanoTime();
+        try (ParcelRowWriter writer = format.open(OutputStream.nullOutputStream())) {
+            for (int i = 0; i < rows; i++) {
+                Parcel parcel = parcels[i & (parcels.length - 1)];
+                parcel.setId((long) i);
+                writer.write(parcel);
+            }
+        }
+        return rows * 1e9 / (System.nanoTime() - started);
+    }
+
+    private static Parcel parcel(int i) {
+        Parcel parcel = new Parcel();
+        parcel.setId((long) i);
+        parcel.setSenderName("Sender " + i);
+        parcel.setRecipientName("Recipient " + i);
+        parcel.setRecipientEmail("recipient" + i + "@example.com");
+        parcel.setTrackingNumber("PM" + (1_000_000_000L + i));
+        parcel.setStatus(Parcel.ParcelStatus.IN_TRANSIT);
+        parcel.setReceivedAt(Instant.parse("2025-03-01T08:15:30Z").plusSeconds(i * 3_607L));
+        parcel.setEstimatedDeliveryAt(parcel.getReceivedAt().plusSeconds(3 * 86_400));
+        parcel.setOriginCity("Mumbai");
+        parcel.setDestinationCity(i % 2 == 0 ? "Delhi" : "Bengaluru");
+        parcel.setShippingCost(new BigDecimal("149.90"));
+        parcel.setAdditionalFees(new BigDecimal("12.50"));
+        parcel.setTotalValue(new BigDecimal("162.40"));
+        parcel.setPaymentMethod("ONLINE");
+        parcel.setParcelType("PACKAGE");
+        parcel.setWeightCategory("SMALL");
+        return parcel;
+    }
+}